@@ -0,0 +1,341 @@
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class that scans the block and inode bitmaps of every group of the volume.
+ * Every bitmap is loaded into long words, so that a word of 64 blocks is
+ * counted with a single Long.bitCount and the runs of free blocks are
+ * found with Long.numberOfTrailingZeros instead of one test per bit.
+ * Groups are scanned in parallel by ForkJoin tasks; every task summarizes
+ * its range of groups, and the summaries are joined so that free extents
+ * crossing the boundaries between groups are counted as a single extent.
+ * @author Vlad Diaconu
+ */
+public class BitmapScanner
+{
+    private static ForkJoinPool scanners = new ForkJoinPool(Math.max(1, Ext2RoutineHandler.bitmapParallelism));
+
+    /**
+     * Class to represent the usage of the volume found by a scan.
+     */
+    public static class Usage
+    {
+        public final long totalBlocks;
+        public final long freeBlocks;
+        public final long totalINodes;
+        public final long freeINodes;
+        public final long freeExtents;
+        public final long largestFreeExtent;
+        /** freeExtentCounts[k] counts the free extents of 2^k to 2^(k+1)-1 blocks */
+        public final long[] freeExtentCounts;
+        /** freeExtentBlocks[k] counts the blocks of those extents */
+        public final long[] freeExtentBlocks;
+
+        private Usage(long totalBlocks,long totalINodes,long freeINodes,Extents extents)
+        {
+            this.totalBlocks = totalBlocks;
+            this.freeBlocks = extents.free;
+            this.totalINodes = totalINodes;
+            this.freeINodes = freeINodes;
+            this.freeExtents = extents.count;
+            this.largestFreeExtent = extents.largest;
+            this.freeExtentCounts = extents.counts;
+            this.freeExtentBlocks = extents.blocks;
+        }
+
+        /**
+         * @return the number of blocks in use.
+         */
+        public long getUsedBlocks()
+        {
+            return totalBlocks - freeBlocks;
+        }
+
+        /**
+         * @return the number of inodes in use.
+         */
+        public long getUsedINodes()
+        {
+            return totalINodes - freeINodes;
+        }
+    }
+
+    /**
+     * Class to represent the summary of a range of blocks.
+     * Free runs touching either end of the range are kept apart in head
+     * and tail until the neighbouring range is known, since they may
+     * continue into it.
+     */
+    private static class Extents
+    {
+        private long length;
+        private long free;
+        private long head;
+        private long tail;
+        private long count;
+        private long largest;
+        private long[] counts = new long[64];
+        private long[] blocks = new long[64];
+        private long iNodesFree;
+
+        /**
+         * @return true if every block of the range is free.
+         */
+        private boolean isFull()
+        {
+            return head == length;
+        }
+
+        /**
+         * Method that records a free extent that cannot grow any more.
+         */
+        private void record(long run)
+        {
+            if(run == 0)
+                return;
+
+            int bucket = 63 - Long.numberOfLeadingZeros(run);
+            ++counts[bucket];
+            blocks[bucket] += run;
+            ++count;
+            largest = Math.max(largest, run);
+        }
+
+        /**
+         * Method that appends the summary of the range that follows this one.
+         * @param next is the summary of the following range.
+         */
+        private void append(Extents next)
+        {
+            if(isFull() && next.isFull())
+            {
+                head = tail = length + next.length;
+            }
+            else if(isFull())
+            {
+                head = length + next.head;
+                tail = next.tail;
+            }
+            else if(next.isFull())
+            {
+                tail = tail + next.length;
+            }
+            else
+            {
+                record(tail + next.head);
+                tail = next.tail;
+            }
+
+            for(int k = 0; k < counts.length; ++k)
+            {
+                counts[k] += next.counts[k];
+                blocks[k] += next.blocks[k];
+            }
+            count += next.count;
+            largest = Math.max(largest, next.largest);
+            length += next.length;
+            free += next.free;
+            iNodesFree += next.iNodesFree;
+        }
+
+        /**
+         * Method that records the runs left at both ends once the whole
+         * volume was summarized.
+         */
+        private void close()
+        {
+            record(head);
+            if(!isFull())
+                record(tail);
+            head = tail = 0;
+        }
+    }
+
+    /**
+     * Method that scans the bitmaps of every group of a volume.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor table of the volume.
+     * @return the usage of the blocks and inodes of the volume.
+     */
+    public static Usage scan(Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        int groups = groupDescriptor.getGroupCount();
+        Extents extents = scanners.invoke(new GroupsTask(0, groups, ext2, superblock, groupDescriptor));
+
+        extents.close();
+
+        long iNodes = (long) superblock.getiNodesInGroup() * groups;
+
+        return new Usage(superblock.getBlockNumber() & 0xffffffffL, iNodes, extents.iNodesFree, extents);
+    }
+
+    /**
+     * Class to represent the scan of a range of groups. Ranges are split
+     * in halves until they hold a few groups.
+     */
+    @SuppressWarnings("serial")
+    private static class GroupsTask extends RecursiveTask<Extents>
+    {
+        private int from;
+        private int to;
+        private Ext2Reader ext2;
+        private SuperBlock superblock;
+        private GroupDescriptor groupDescriptor;
+
+        GroupsTask(int from,int to,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+        {
+            this.from = from;
+            this.to = to;
+            this.ext2 = ext2;
+            this.superblock = superblock;
+            this.groupDescriptor = groupDescriptor;
+        }
+
+        @Override
+        protected Extents compute()
+        {
+            if(to - from > Ext2RoutineHandler.bitmapGroupsPerTask)
+            {
+                int middle = (from + to) >>> 1;
+
+                GroupsTask left = new GroupsTask(from, middle, ext2, superblock, groupDescriptor);
+                GroupsTask right = new GroupsTask(middle, to, ext2, superblock, groupDescriptor);
+
+                left.fork();
+                Extents rightExtents = right.compute();
+                Extents extents = left.join();
+                extents.append(rightExtents);
+
+                return extents;
+            }
+
+            //one array of words is reused for every bitmap of the range
+            long[] words = new long[(ext2.getBlockSize() * 8 + 63) / 64];
+            Extents extents = null;
+
+            for(int group = from; group < to; ++group)
+            {
+                GroupDescriptor.Group detail = groupDescriptor.getGroup(group, superblock);
+
+                Extents blocks = new Extents();
+                int bits = load(ext2, groupDescriptor.getBlockBitmap(group), detail.blockCount, words);
+                scanFree(words, bits, blocks);
+
+                bits = load(ext2, groupDescriptor.getINodeBitmap(group), superblock.getiNodesInGroup(), words);
+                blocks.iNodesFree = bits - countUsed(words, bits);
+
+                if(extents == null)
+                    extents = blocks;
+                else
+                    extents.append(blocks);
+            }
+
+            return extents == null ? new Extents() : extents;
+        }
+    }
+
+    /**
+     * Method that loads a bitmap block into long words.
+     * Bit i of the bitmap is bit (i % 64) of word (i / 64), and the bits
+     * past the end of the bitmap are cleared.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param block is the block holding the bitmap.
+     * @param bits is the number of bits of the bitmap.
+     * @param words receives the bitmap.
+     * @return the number of bits loaded.
+     */
+    public static int load(Ext2Reader ext2,long block,int bits,long[] words)
+    {
+        int blockSize = ext2.getBlockSize();
+        bits = Math.min(bits, blockSize * 8);
+
+        int count = (bits + 63) >>> 6;
+        ByteBuffer data = ext2.slice(block * blockSize, count * 8);
+
+        for(int w = 0; w < count; ++w)
+            words[w] = data.getLong(w * 8);
+
+        if((bits & 63) != 0)
+            words[count - 1] &= (1L << (bits & 63)) - 1;
+
+        return bits;
+    }
+
+    /**
+     * Method that counts the bits set in a bitmap.
+     * @param words holds the bitmap.
+     * @param bits is the number of bits of the bitmap.
+     * @return the number of bits set.
+     */
+    public static long countUsed(long[] words,int bits)
+    {
+        long used = 0;
+
+        for(int w = 0; w < (bits + 63) >>> 6; ++w)
+            used += Long.bitCount(words[w]);
+
+        return used;
+    }
+
+    /**
+     * Method that summarizes the runs of clear bits of a bitmap.
+     * Each run is found by jumping to the next set or clear bit with
+     * numberOfTrailingZeros, so a run costs a few operations per word it
+     * covers rather than one per bit.
+     * @param words holds the bitmap.
+     * @param bits is the number of bits of the bitmap.
+     * @param extents receives the summary.
+     */
+    private static void scanFree(long[] words,int bits,Extents extents)
+    {
+        extents.length = bits;
+
+        int position = 0;
+
+        while(position < bits)
+        {
+            int start = nextBit(words, bits, position, false);
+            if(start >= bits)
+                break;
+
+            int end = nextBit(words, bits, start, true);
+            long run = end - start;
+
+            extents.free += run;
+
+            if(start == 0)
+                extents.head = run;
+            if(end == bits)
+                extents.tail = run;
+            if(start != 0 && end != bits)
+                extents.record(run);
+
+            position = end;
+        }
+    }
+
+    /**
+     * Method that finds the next bit of a given value.
+     * @param words holds the bitmap.
+     * @param bits is the number of bits of the bitmap.
+     * @param from is the first bit to look at.
+     * @param set is true to look for a set bit, false for a clear one.
+     * @return the index of the bit, or bits if there is none.
+     */
+    private static int nextBit(long[] words,int bits,int from,boolean set)
+    {
+        int w = from >>> 6;
+        long word = (set ? words[w] : ~words[w]) & (-1L << (from & 63));
+
+        while(word == 0)
+        {
+            if(++w >= (bits + 63) >>> 6)
+                return bits;
+            word = set ? words[w] : ~words[w];
+        }
+
+        return Math.min(bits, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.*;
+
+/**
+ * Class to represent a cache of blocks read from the volume, keyed by
+ * their physical block number.
+ * The eviction follows the 2Q policy: blocks seen once live in a FIFO queue
+ * and only blocks referenced again are promoted to the LRU queue, so a single
+ * scan over a large file cannot flush the directory and inode blocks that are
+ * read over and over.
+ * @author Vlad Diaconu
+ */
+public class BlockCache
+{
+    private LinkedHashMap<Long, byte[]> recentIn = new LinkedHashMap<>();
+    private LinkedHashMap<Long, byte[]> frequent = new LinkedHashMap<>(16, 0.75f, true);
+    private LinkedHashSet<Long> recentOut = new LinkedHashSet<>();
+
+    private long capacity;
+    private long recentInCapacity;
+    private int recentOutCapacity;
+    private long usedBytes = 0L;
+    private long recentInBytes = 0L;
+
+    private long hits = 0L;
+    private long misses = 0L;
+    private long evictions = 0L;
+
+    /**
+     * Method that allows the construction of a block cache.
+     * @param capacity is the number of bytes the cached blocks may occupy.
+     * @param blockSize is the size of a block, used to size the queue that
+     * remembers recently evicted blocks.
+     */
+    public BlockCache(long capacity, int blockSize)
+    {
+        this.capacity = capacity;
+        this.recentInCapacity = capacity / 4;
+        this.recentOutCapacity = (int) Math.max(1, capacity / 2 / blockSize);
+    }
+
+    /**
+     * Method that retrieves a block from the cache.
+     * @param block is the physical block number.
+     * @return the content of the block or null if the block is not cached.
+     */
+    public synchronized byte[] get(long block)
+    {
+        byte[] data = frequent.get(block);
+
+        if(data == null)
+            data = recentIn.get(block);
+
+        if(data != null)
+            ++hits;
+        else
+            ++misses;
+
+        return data;
+    }
+
+    /**
+     * Method that adds a block that was just read from the volume.
+     * Blocks that were evicted from the FIFO queue not long ago go
+     * straight to the LRU queue, all others start in the FIFO queue.
+     * @param block is the physical block number.
+     * @param data is the content of the block.
+     */
+    public synchronized void put(long block, byte[] data)
+    {
+        if(data.length > capacity || frequent.containsKey(block) || recentIn.containsKey(block))
+            return;
+
+        if(recentOut.remove(block))
+            frequent.put(block, data);
+        else
+        {
+            recentIn.put(block, data);
+            recentInBytes += data.length;
+        }
+
+        usedBytes += data.length;
+
+        while(usedBytes > capacity)
+            evict();
+    }
+
+    /**
+     * Method that removes a single block, preferring the FIFO queue
+     * while it holds more than its share of the capacity.
+     */
+    private void evict()
+    {
+        Map.Entry<Long, byte[]> victim;
+
+        if(!recentIn.isEmpty() && (recentInBytes > recentInCapacity || frequent.isEmpty()))
+        {
+            victim = recentIn.entrySet().iterator().next();
+            recentIn.remove(victim.getKey());
+            recentInBytes -= victim.getValue().length;
+
+            recentOut.add(victim.getKey());
+            if(recentOut.size() > recentOutCapacity)
+                recentOut.remove(recentOut.iterator().next());
+        }
+        else
+        {
+            victim = frequent.entrySet().iterator().next();
+            frequent.remove(victim.getKey());
+        }
+
+        usedBytes -= victim.getValue().length;
+        ++evictions;
+    }
+
+    /**
+     * Method that empties the cache without resetting the counters.
+     */
+    public synchronized void clear()
+    {
+        recentIn.clear();
+        frequent.clear();
+        recentOut.clear();
+        usedBytes = 0L;
+        recentInBytes = 0L;
+    }
+
+    /**
+     * @return the number of reads served from the cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of reads that had to go to the volume.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of blocks removed to stay within the capacity.
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return the number of bytes currently cached.
+     */
+    public synchronized long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+    /**
+     * @return the maximum number of bytes the cache may hold.
+     */
+    public long getCapacity()
+    {
+        return capacity;
+    }
+}
@@ -0,0 +1,391 @@
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class that maps the blocks of an inode to the blocks of the volume.
+ * The 15 pointers of the inode and its indirect trees are turned into a
+ * compact list of runs (logical start, physical start, length), where every
+ * run is a sequence of logical blocks stored next to each other on disk.
+ * Readers can then issue one large read per run instead of one per block.
+ * Logical blocks covered by no run are holes.
+ * The double and triple indirect trees of large files are resolved in
+ * parallel on a ForkJoin pool; every subtree produces its own runs, which
+ * are joined in logical order, so the result does not depend on the
+ * order in which the blocks were read.
+ * @author Vlad Diaconu
+ */
+public class BlockMap
+{
+    private long[] logicalStarts = new long[4];
+    private long[] physicalStarts = new long[4];
+    private int[] lengths = new int[4];
+    private int runs = 0;
+
+    private long blockCount;
+
+    private static ForkJoinPool resolvers = new ForkJoinPool(Math.max(1, Ext2RoutineHandler.indirectParallelism));
+
+    /**
+     * Method that allows the construction of an empty block map.
+     * @param blockCount is the number of logical blocks of the inode.
+     */
+    private BlockMap(long blockCount)
+    {
+        this.blockCount = blockCount;
+    }
+
+    /**
+     * Method that builds the block map of an inode.
+     * @param node is the decoded inode.
+     * @param ext2 is the ext2 image the program reads from.
+     * @return the runs of the inode, sorted by logical block.
+     */
+    public static BlockMap build(INode node,Ext2Reader ext2)
+    {
+        long perBlock = ext2.getBlockSize() / Ext2RoutineHandler.byte_Value;
+        long blockCount = (node.getSize() + ext2.getBlockSize() - 1) / ext2.getBlockSize();
+
+        BlockMap map = new BlockMap(blockCount);
+
+        for(int i = 0; i < 12 && i < blockCount; ++i)
+        {
+            if(node.getPointer(i) != 0)
+                map.add(i, node.getPointer(i) & 0xffffffffL);
+        }
+
+        map.walk(node.getPointer(12) & 0xffffffffL, 1, 12, ext2);
+
+        if(Ext2RoutineHandler.indirectParallelism > 1)
+        {
+            map.append(map.resolve(node.getPointer(13) & 0xffffffffL, 2, 12 + perBlock, ext2));
+            map.append(map.resolve(node.getPointer(14) & 0xffffffffL, 3, 12 + perBlock + perBlock * perBlock, ext2));
+        }
+        else
+        {
+            map.walk(node.getPointer(13) & 0xffffffffL, 2, 12 + perBlock, ext2);
+            map.walk(node.getPointer(14) & 0xffffffffL, 3, 12 + perBlock + perBlock * perBlock, ext2);
+        }
+
+        return map;
+    }
+
+    /**
+     * Method that resolves an indirect tree on the ForkJoin pool.
+     * @param block is the root of the tree.
+     * @param depth is the level of indirection of the tree.
+     * @param firstLogical is the first logical block the tree maps.
+     * @param ext2 is the ext2 image the program reads from.
+     * @return the runs of the tree.
+     */
+    private BlockMap resolve(long block,int depth,long firstLogical,Ext2Reader ext2)
+    {
+        if(block == 0 || firstLogical >= blockCount)
+            return new BlockMap(blockCount);
+
+        int perBlock = ext2.getBlockSize() / Ext2RoutineHandler.byte_Value;
+
+        return resolvers.invoke(new Subtree(ext2.readBlock(block), 0, perBlock, depth, firstLogical, blockCount, ext2));
+    }
+
+    /**
+     * Class to represent the resolution of a range of pointers of an
+     * indirect block.
+     * Ranges are split in halves until they hold a single pointer, whose
+     * block is then read and resolved one level down; ranges of pointers
+     * to blocks of data are resolved directly.
+     */
+    @SuppressWarnings("serial")
+    private static class Subtree extends RecursiveTask<BlockMap>
+    {
+        private ByteBuffer pointers;
+        private int from;
+        private int to;
+        private int depth;
+        private long firstLogical;
+        private long blockCount;
+        private Ext2Reader ext2;
+
+        /**
+         * @param pointers is the indirect block.
+         * @param from is the index of the first pointer of the range.
+         * @param to is the index after the last pointer of the range.
+         * @param depth is the level of indirection of the indirect block.
+         * @param firstLogical is the first logical block the indirect block maps.
+         * @param blockCount is the number of logical blocks of the inode.
+         * @param ext2 is the ext2 image the program reads from.
+         */
+        Subtree(ByteBuffer pointers,int from,int to,int depth,long firstLogical,long blockCount,Ext2Reader ext2)
+        {
+            this.pointers = pointers;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+            this.firstLogical = firstLogical;
+            this.blockCount = blockCount;
+            this.ext2 = ext2;
+        }
+
+        @Override
+        protected BlockMap compute()
+        {
+            int perBlock = ext2.getBlockSize() / Ext2RoutineHandler.byte_Value;
+            long span = 1L;
+
+            for(int i = 1; i < depth; ++i)
+                span *= perBlock;
+
+            BlockMap map = new BlockMap(blockCount);
+
+            if(depth == 1)
+            {
+                for(int i = from; i < to; ++i)
+                {
+                    long logical = firstLogical + i * span;
+                    long child = pointers.getInt(i * Ext2RoutineHandler.byte_Value) & 0xffffffffL;
+
+                    if(logical >= blockCount)
+                        break;
+                    if(child != 0)
+                        map.add(logical, child);
+                }
+            }
+            else if(to - from == 1)
+            {
+                long logical = firstLogical + from * span;
+                long child = pointers.getInt(from * Ext2RoutineHandler.byte_Value) & 0xffffffffL;
+
+                if(child != 0 && logical < blockCount)
+                    return new Subtree(ext2.readBlock(child), 0, perBlock, depth - 1, logical, blockCount, ext2).compute();
+            }
+            else if(firstLogical + from * span < blockCount)
+            {
+                int middle = (from + to) >>> 1;
+
+                Subtree left = new Subtree(pointers, from, middle, depth, firstLogical, blockCount, ext2);
+                Subtree right = new Subtree(pointers, middle, to, depth, firstLogical, blockCount, ext2);
+
+                left.fork();
+                BlockMap rightMap = right.compute();
+
+                map = left.join();
+                map.append(rightMap);
+            }
+
+            return map;
+        }
+    }
+
+    /**
+     * Method that adds the data blocks of an indirect tree to the map.
+     * A zero pointer skips the whole subtree below it.
+     * @param block is the root of the tree.
+     * @param depth is the level of indirection of the tree.
+     * @param firstLogical is the first logical block the tree maps.
+     * @param ext2 is the ext2 image the program reads from.
+     */
+    private void walk(long block,int depth,long firstLogical,Ext2Reader ext2)
+    {
+        if(block == 0 || firstLogical >= blockCount)
+            return;
+
+        int perBlock = ext2.getBlockSize() / Ext2RoutineHandler.byte_Value;
+        long span = 1L;
+
+        for(int i = 1; i < depth; ++i)
+            span *= perBlock;
+
+        ByteBuffer b = ext2.readBlock(block);
+
+        for(int i = 0; i < perBlock; ++i)
+        {
+            long logical = firstLogical + i * span;
+            long child = b.getInt(i * Ext2RoutineHandler.byte_Value) & 0xffffffffL;
+
+            if(logical >= blockCount)
+                break;
+            if(child == 0)
+                continue;
+
+            if(depth == 1)
+                add(logical, child);
+            else
+                walk(child, depth - 1, logical, ext2);
+        }
+    }
+
+    /**
+     * Method that appends a block to the map, extending the last run
+     * if the block follows it both logically and physically.
+     * @param logical is the index of the block within the inode.
+     * @param physical is the block number within the volume.
+     */
+    private void add(long logical,long physical)
+    {
+        add(logical, physical, 1);
+    }
+
+    /**
+     * Method that appends the runs of a map that starts after this one ends.
+     * @param other is the map of the following logical blocks.
+     */
+    private void append(BlockMap other)
+    {
+        for(int run = 0; run < other.runs; ++run)
+            add(other.logicalStarts[run], other.physicalStarts[run], other.lengths[run]);
+    }
+
+    /**
+     * Method that appends a run to the map, merging it into the last run
+     * if it follows it both logically and physically.
+     * @param logical is the first logical block of the run.
+     * @param physical is the first physical block of the run.
+     * @param length is the number of blocks of the run.
+     */
+    private void add(long logical,long physical,int length)
+    {
+        if(runs > 0)
+        {
+            int last = runs - 1;
+
+            if((long) lengths[last] + length <= Integer.MAX_VALUE
+               && logicalStarts[last] + lengths[last] == logical
+               && physicalStarts[last] + lengths[last] == physical)
+            {
+                lengths[last] += length;
+                return;
+            }
+        }
+
+        if(runs == lengths.length)
+        {
+            logicalStarts = Arrays.copyOf(logicalStarts, runs * 2);
+            physicalStarts = Arrays.copyOf(physicalStarts, runs * 2);
+            lengths = Arrays.copyOf(lengths, runs * 2);
+        }
+
+        logicalStarts[runs] = logical;
+        physicalStarts[runs] = physical;
+        lengths[runs] = length;
+        ++runs;
+    }
+
+    /**
+     * Method that finds the run holding a logical block.
+     * @param logical is the index of the block within the inode.
+     * @return the index of the run, or (-(next run) - 1) if the block
+     * is a hole, where next run is the first run after the hole.
+     */
+    public int findRun(long logical)
+    {
+        int low = 0;
+        int high = runs - 1;
+
+        while(low <= high)
+        {
+            int middle = (low + high) >>> 1;
+
+            if(logical < logicalStarts[middle])
+                high = middle - 1;
+            else if(logical >= logicalStarts[middle] + lengths[middle])
+                low = middle + 1;
+            else
+                return middle;
+        }
+
+        return -low - 1;
+    }
+
+    /**
+     * Method that finds the first byte at or after an offset that is
+     * stored on disk, like lseek with SEEK_DATA.
+     * @param offset is the byte offset within the file.
+     * @param blockSize is the size of a block of the volume.
+     * @param size is the size of the file.
+     * @return the offset of the data, or -1 if there is no data at or
+     * after offset.
+     */
+    public long nextData(long offset,int blockSize,long size)
+    {
+        if(offset >= size)
+            return -1;
+
+        int run = findRun(offset / blockSize);
+
+        if(run >= 0)
+            return offset;
+
+        run = -run - 1;
+        if(run >= runs)
+            return -1;
+
+        long start = logicalStarts[run] * blockSize;
+
+        return start < size ? start : -1;
+    }
+
+    /**
+     * Method that finds the first byte at or after an offset that lies in
+     * a hole, like lseek with SEEK_HOLE. The end of the file counts as a hole.
+     * @param offset is the byte offset within the file.
+     * @param blockSize is the size of a block of the volume.
+     * @param size is the size of the file.
+     * @return the offset of the hole, or -1 if offset is past the end of the file.
+     */
+    public long nextHole(long offset,int blockSize,long size)
+    {
+        if(offset >= size)
+            return -1;
+
+        int run = findRun(offset / blockSize);
+
+        if(run < 0)
+            return offset;
+
+        //runs that follow each other logically but not on disk are still data
+        while(run + 1 < runs && logicalStarts[run + 1] == logicalStarts[run] + lengths[run])
+            ++run;
+
+        return Math.min(size, (logicalStarts[run] + lengths[run]) * blockSize);
+    }
+
+    /**
+     * @return the number of runs in the map.
+     */
+    public int getRunCount()
+    {
+        return runs;
+    }
+
+    /**
+     * @return the first logical block of a run.
+     */
+    public long getLogicalStart(int run)
+    {
+        return logicalStarts[run];
+    }
+
+    /**
+     * @return the first physical block of a run.
+     */
+    public long getPhysicalStart(int run)
+    {
+        return physicalStarts[run];
+    }
+
+    /**
+     * @return the number of blocks of a run.
+     */
+    public int getLength(int run)
+    {
+        return lengths[run];
+    }
+
+    /**
+     * @return the number of logical blocks of the inode, holes included.
+     */
+    public long getBlockCount()
+    {
+        return blockCount;
+    }
+}
@@ -10,30 +10,42 @@ import java.util.*;
 public class Directory
 {
     private String directoryName;
-    private String details;
-    private int block;
+    private long block;
+    private int iNodeNumber;
     private INode node;
-    private int[] subDirectories = new int[15];
  
     /**
      * Method that allows the construction of a directory.
-     * @param data is the data as an array of bytes that contains details
-     * about the entry.
+     * @param node is the decoded inode of the entry.
      * @param directoryName is the name of the directory that is created.
-     * @param details is a string that contains details about the entry such as
-     * permissions, size,hard links, date when was last modified.
      * @param block is the block of memory containing the directory.
-     * @param pointers is an array of integers pointing towards all subdirectories and
-     * files contained in the directory.
+     * @param iNodeNumber is the number of the inode of the entry.
      */
-    public Directory(byte[] data, String directoryName, String details,int block,int[] pointers)
+    public Directory(INode node, String directoryName,long block,int iNodeNumber)
     {
         this.directoryName = directoryName;
-        this.details = details;
         this.block = block;
+        this.iNodeNumber = iNodeNumber;
 
-        node = new INode(data);
-        node.extractDetails();
+        this.node = node;
+    }
+
+    /**
+     * Method that formats the details of an entry as printed by ls, such
+     * as permissions, size, hard links, date when was last modified.
+     * @param node is the decoded inode of the entry.
+     * @param name is the name of the entry.
+     * @return the details, ending with a new line.
+     */
+    public static String formatDetails(INode node,String name)
+    {
+        return node.getPermissions() + "   " +
+               node.getHardLinks()   + "   " +
+               node.getUserID()      + "   " +
+               node.getGroupID()     + "   " +
+               node.getSize()        + "   " +
+               node.getDate()        + "   " +
+               name + "\n";
     }
     
     /**
@@ -45,11 +57,11 @@ public class Directory
     }
 
     /**
-     * @return the details about the directory.
+     * @return the details about the directory, formatted when they are asked for.
      */
     public String getDetails()
     {
-        return details;
+        return formatDetails(node, directoryName);
     }
 
     /**
@@ -63,17 +75,25 @@ public class Directory
     /**
      * @return the block containing the directory.
      */
-    public int getBlock()
+    public long getBlock()
     {
         return block;
     }
 
+    /**
+     * @return the number of the inode of the entry.
+     */
+    public int getINodeNumber()
+    {
+        return iNodeNumber;
+    }
+
     /**
      *@return an array of pointers towards subdirectories and files
      * within the directory.
      */
     public int[] getSubDirectories()
     {
-        return subDirectories;
+        return node.getPointers();
     }
 }   
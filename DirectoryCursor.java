@@ -0,0 +1,120 @@
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Class that walks the entries of directory blocks in place.
+ * The cursor is positioned over a buffer holding one or more directory
+ * blocks and yields the fields of one entry at a time (inode number,
+ * record length, name length, file type and name bytes) straight from
+ * the buffer, so walking a directory allocates nothing per entry.
+ * A cursor is reused for every block it is reset to; it is not meant
+ * to be shared between threads.
+ * @author Vlad Diaconu
+ */
+public class DirectoryCursor
+{
+    private ByteBuffer data;
+    private int blockEnd;
+    private int next;
+
+    private int entry;
+    private int iNodeNumber;
+    private int recordLength;
+    private int nameLength;
+    private int fileType;
+
+    /**
+     * Method that positions the cursor before the first entry of a block.
+     * @param data holds the directory block, in little endian order.
+     * @param start is the offset of the block within data.
+     * @param blockSize is the size of the block.
+     */
+    public void reset(ByteBuffer data,int start,int blockSize)
+    {
+        this.data = data;
+        this.blockEnd = start + blockSize;
+        this.next = start;
+    }
+
+    /**
+     * Method that moves the cursor to the next entry of the block.
+     * A record length that could not hold the header of an entry, or that
+     * would leave the block, ends the block, as the rest of it cannot
+     * be trusted. Unused entries (inode 0) are yielded as well.
+     * @return true if the cursor is on an entry, false once the block ended.
+     */
+    public boolean next()
+    {
+        if(next + Ext2RoutineHandler.byte_Value * 2 > blockEnd)
+            return false;
+
+        int size = data.getShort(next + Ext2RoutineHandler.byte_Value) & 0xffff;
+
+        //an entry can never be shorter than its header nor leave its block
+        if(size < Ext2RoutineHandler.byte_Value * 2 || next + size > blockEnd)
+        {
+            next = blockEnd;
+            return false;
+        }
+
+        entry = next;
+        iNodeNumber = data.getInt(entry);
+        recordLength = size;
+        nameLength = Math.min(data.get(entry + Ext2RoutineHandler.directoryNameOffset) & 0xff, size - Ext2RoutineHandler.byte_Value * 2);
+        fileType = data.get(entry + Ext2RoutineHandler.directoryNameOffset + 1);
+        next += size;
+
+        return true;
+    }
+
+    /**
+     * @return the number of the inode of the entry, 0 if the entry is unused.
+     */
+    public int getINodeNumber()
+    {
+        return iNodeNumber;
+    }
+
+    /**
+     * @return the length of the record of the entry, up to the next entry.
+     */
+    public int getRecordLength()
+    {
+        return recordLength;
+    }
+
+    /**
+     * @return the number of bytes of the name of the entry.
+     */
+    public int getNameLength()
+    {
+        return nameLength;
+    }
+
+    /**
+     * @return the file type stored in the entry, 0 if the filesystem
+     * does not record it.
+     */
+    public int getFileType()
+    {
+        return fileType;
+    }
+
+    /**
+     * @return the offset of the first byte of the name within the buffer.
+     */
+    public int getNameOffset()
+    {
+        return entry + Ext2RoutineHandler.byte_Value * 2;
+    }
+
+    /**
+     * Method that copies the name of the entry into an existing array.
+     * @param destination is the array receiving the name.
+     * @param offset is the first index written in destination.
+     */
+    public void copyName(byte[] destination,int offset)
+    {
+        data.get(getNameOffset(), destination, offset, nameLength);
+    }
+}
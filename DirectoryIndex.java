@@ -0,0 +1,211 @@
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Class to represent the entries of a directory together with a hash
+ * index from their names to their position.
+ * The names are kept as the raw bytes read from the directory blocks,
+ * packed in a single array, and the index is an open-addressing table of
+ * entry positions, so a lookup by name costs a hash and usually a single
+ * comparison of bytes, whatever the size of the directory.
+ * No inode of the entries is decoded to build the index, and the entries
+ * are read through a DirectoryCursor, so no object is built per entry
+ * until a name is asked for.
+ * @author Vlad Diaconu
+ */
+public class DirectoryIndex
+{
+    private byte[] names = new byte[256];
+    private int[] nameOffsets = new int[17];
+    private int[] iNodeNumbers = new int[16];
+    private byte[] fileTypes = new byte[16];
+    private int count = 0;
+
+    private int[] table;
+
+    /**
+     * Method that reads the entries of a directory and indexes them.
+     * @param node is the decoded inode of the directory.
+     * @param ext2 is the ext2 image the program reads from.
+     * @return the index of the directory.
+     */
+    public static DirectoryIndex build(INode node,Ext2Reader ext2)
+    {
+        DirectoryIndex index = new DirectoryIndex();
+        DirectoryCursor cursor = new DirectoryCursor();
+        BlockMap map = BlockMap.build(node, ext2);
+
+        for(int run = 0; run < map.getRunCount(); ++run)
+        {
+            for(int done = 0; done < map.getLength(run); done += Ext2RoutineHandler.maxRunBlocks)
+            {
+                int blocks = Math.min(map.getLength(run) - done, Ext2RoutineHandler.maxRunBlocks);
+                ByteBuffer data = ext2.readRun(map.getPhysicalStart(run) + done, blocks);
+
+                for(int k = 0; k < blocks; ++k)
+                {
+                    cursor.reset(data, k * ext2.getBlockSize(), ext2.getBlockSize());
+                    index.addBlock(cursor);
+                }
+            }
+        }
+
+        index.buildTable();
+
+        return index;
+    }
+
+    /**
+     * Method that adds the entries of a directory block.
+     * Entries whose inode number is 0 are unused and skipped.
+     * @param cursor is positioned at the start of the directory block.
+     */
+    private void addBlock(DirectoryCursor cursor)
+    {
+        while(cursor.next())
+        {
+            int number = cursor.getINodeNumber();
+            int nameSize = cursor.getNameLength();
+
+            if(number == 0)
+                continue;
+
+            if(count == iNodeNumbers.length)
+            {
+                iNodeNumbers = Arrays.copyOf(iNodeNumbers, count * 2);
+                fileTypes = Arrays.copyOf(fileTypes, count * 2);
+                nameOffsets = Arrays.copyOf(nameOffsets, count * 2 + 1);
+            }
+            if(nameOffsets[count] + nameSize > names.length)
+                names = Arrays.copyOf(names, Math.max(names.length * 2, nameOffsets[count] + nameSize));
+
+            cursor.copyName(names, nameOffsets[count]);
+
+            iNodeNumbers[count] = number;
+            fileTypes[count] = (byte) cursor.getFileType();
+            nameOffsets[count + 1] = nameOffsets[count] + nameSize;
+            ++count;
+        }
+    }
+
+    /**
+     * Method that builds the hash table once every entry was added.
+     * The table is kept at most half full so that probe sequences stay short.
+     */
+    private void buildTable()
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, count * 2) - 1) << 1;
+        table = new int[capacity];
+
+        for(int entry = 0; entry < count; ++entry)
+        {
+            int slot = hash(names, nameOffsets[entry], nameOffsets[entry + 1] - nameOffsets[entry]) & (capacity - 1);
+
+            while(table[slot] != 0)
+                slot = (slot + 1) & (capacity - 1);
+
+            //slots hold the position of the entry plus one, so 0 means empty
+            table[slot] = entry + 1;
+        }
+    }
+
+    /**
+     * Method that finds an entry by its raw name.
+     * @param name holds the bytes of the name.
+     * @param offset is the index of the first byte of the name.
+     * @param length is the number of bytes of the name.
+     * @return the position of the entry or -1 if there is no such entry.
+     */
+    public int find(byte[] name,int offset,int length)
+    {
+        int mask = table.length - 1;
+        int slot = hash(name, offset, length) & mask;
+
+        while(table[slot] != 0)
+        {
+            int entry = table[slot] - 1;
+            int start = nameOffsets[entry];
+
+            if(nameOffsets[entry + 1] - start == length
+               && Arrays.equals(names, start, start + length, name, offset, offset + length))
+                return entry;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Method that finds an entry by its name.
+     * @param name is the name of the entry.
+     * @return the position of the entry or -1 if there is no such entry.
+     */
+    public int find(String name)
+    {
+        byte[] bytes = name.getBytes();
+
+        return find(bytes, 0, bytes.length);
+    }
+
+    /**
+     * FNV-1a hash of a name.
+     */
+    private static int hash(byte[] name,int offset,int length)
+    {
+        int hash = 0x811c9dc5;
+
+        for(int i = offset; i < offset + length; ++i)
+        {
+            hash ^= name[i] & 0xff;
+            hash *= 0x01000193;
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the number of entries of the directory.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * @return the number of the inode of an entry.
+     */
+    public int getINodeNumber(int entry)
+    {
+        return iNodeNumbers[entry];
+    }
+
+    /**
+     * @return the file type stored in the entry itself, 0 if the
+     * filesystem does not record it.
+     */
+    public int getFileType(int entry)
+    {
+        return fileTypes[entry];
+    }
+
+    /**
+     * @return true if the entry is the . or .. entry of the directory,
+     * checked without building its name.
+     */
+    public boolean isSelfOrParent(int entry)
+    {
+        int start = nameOffsets[entry];
+        int length = nameOffsets[entry + 1] - start;
+
+        return (length == 1 || length == 2) && names[start] == '.' && names[start + length - 1] == '.';
+    }
+
+    /**
+     * @return the name of an entry.
+     */
+    public String getName(int entry)
+    {
+        return new String(names, nameOffsets[entry], nameOffsets[entry + 1] - nameOffsets[entry]);
+    }
+}
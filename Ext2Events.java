@@ -0,0 +1,85 @@
+import jdk.jfr.*;
+
+/**
+ * Class that holds the JDK Flight Recorder events of the reader, so that a
+ * recording can tie a slow command to the reads, inode decodes and
+ * directory parses behind it.
+ * Every event is created on the stack and only filled in and committed
+ * when shouldCommit() says it is recorded; with recording off the JIT
+ * removes the event altogether, so the hot paths pay nothing for it.
+ * @author Vlad Diaconu
+ */
+public class Ext2Events
+{
+    /**
+     * Event of a read of the volume, or of blocks found in the block cache.
+     * It is by far the most frequent event, so it carries no stack trace
+     * unless the recording settings ask for one.
+     */
+    @Name("ext2.BlockRead")
+    @Label("Block Read")
+    @Category({"Ext2", "I/O"})
+    @Description("Bytes of the volume read through the channel, a mapped window or the block cache")
+    @StackTrace(false)
+    public static class BlockRead extends Event
+    {
+        @Label("Offset")
+        public long offset;
+
+        @Label("Length")
+        @DataAmount(DataAmount.BYTES)
+        public long length;
+
+        @Label("Cache Hit")
+        public boolean cacheHit;
+
+        @Label("Mapped")
+        public boolean mapped;
+    }
+
+    /**
+     * Event of the inodes decoded from a read of an inode table.
+     */
+    @Name("ext2.InodeDecode")
+    @Label("Inode Decode")
+    @Category({"Ext2", "Metadata"})
+    @Description("Inodes read from an inode table and decoded")
+    public static class INodeDecode extends Event
+    {
+        @Label("Inode Number")
+        public int iNodeNumber;
+
+        @Label("Inodes")
+        @Description("Number of inodes decoded from the same read, starting with the one numbered")
+        public int count;
+    }
+
+    /**
+     * Event of the parse of the entries of a directory.
+     */
+    @Name("ext2.DirectoryParse")
+    @Label("Directory Parse")
+    @Category({"Ext2", "Metadata"})
+    @Description("Entries of a directory read and indexed by name")
+    public static class DirectoryParse extends Event
+    {
+        @Label("Directory Inode")
+        public int iNodeNumber;
+
+        @Label("Entries")
+        public int entries;
+    }
+
+    /**
+     * Event of a command of the command line.
+     */
+    @Name("ext2.CommandExecuted")
+    @Label("Command Executed")
+    @Category({"Ext2", "Commands"})
+    @Description("A command of the command line, from the line being read until its output was printed")
+    public static class CommandExecuted extends Event
+    {
+        @Label("Command")
+        public String command;
+    }
+}
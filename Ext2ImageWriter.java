@@ -0,0 +1,893 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Class that writes synthetic ext2 images for benchmarks and scale tests.
+ * The image holds a generated directory tree (fanout subdirectories and a
+ * number of files in every directory, down to a given depth) next to
+ * explicitly added files and directories. File sizes are drawn from a
+ * log-uniform distribution, and the fragmentation level is the chance that
+ * a data block is not placed right after the previous one, leaving a gap.
+ * The layout follows revision 1 of ext2 with the sparse_super and filetype
+ * features: superblock and group descriptor table (backed up in groups 0, 1
+ * and the powers of 3, 5 and 7), bitmaps, inode tables, directory entries
+ * and files mapped through up to three levels of indirect blocks.
+ * Only the bitmaps live in memory while the image is written, so images with
+ * millions of inodes can be produced; when no group count is given, a dry
+ * run sizes the volume first.
+ * @author Vlad Diaconu
+ */
+public class Ext2ImageWriter
+{
+    private int blockSize = 1024;
+    private int groups = 0;
+    private int blocksPerGroup = 0;
+    private int iNodesPerGroup = 0;
+    private int fanout = 4;
+    private int depth = 2;
+    private int filesPerDirectory = 16;
+    private long minFileSize = 1;
+    private long maxFileSize = 64 << 10;
+    private double fragmentation = 0.0;
+    private long seed = 42;
+    private boolean fillData = true;
+    private int time = (int)(System.currentTimeMillis() / 1000);
+
+    private ArrayList<String> extraNames = new ArrayList<>();
+    private ArrayList<long[]> extraSizes = new ArrayList<>();
+
+    /* state of a single run */
+    private boolean dryRun;
+    private FileChannel image;
+    private Random random;
+    private byte[][] blockBitmaps;
+    private byte[][] iNodeBitmaps;
+    private int[] directories;
+    private int firstDataBlock;
+    private int gdtBlocks;
+    private int tableGroups;
+    private int iNodeTableBlocks;
+    private long blockCount;
+    private long nextBlock;
+    private int nextINode;
+    private boolean largeFile;
+
+    private long pendingStart = -1;
+    private int pendingBlocks = 0;
+    private ByteBuffer pending;
+
+    /**
+     * Method that sets the size of a block: 1024, 2048 or 4096.
+     */
+    public Ext2ImageWriter blockSize(int blockSize)
+    {
+        if(blockSize != 1024 && blockSize != 2048 && blockSize != 4096)
+            throw new IllegalArgumentException("Unsupported block size " + blockSize);
+
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * Method that sets the number of block groups, 0 to size the volume
+     * to its content.
+     */
+    public Ext2ImageWriter groups(int groups)
+    {
+        this.groups = groups;
+        return this;
+    }
+
+    /**
+     * Method that sets the number of blocks of a group, at most 8 times the
+     * block size; 0 uses the largest number. Smaller groups give volumes
+     * with many groups without many blocks.
+     */
+    public Ext2ImageWriter blocksPerGroup(int blocksPerGroup)
+    {
+        this.blocksPerGroup = blocksPerGroup;
+        return this;
+    }
+
+    /**
+     * Method that sets the number of inodes of a group; 0 gives one inode
+     * per 8 KiB of the group.
+     */
+    public Ext2ImageWriter iNodesPerGroup(int iNodesPerGroup)
+    {
+        this.iNodesPerGroup = iNodesPerGroup;
+        return this;
+    }
+
+    /**
+     * Method that sets the shape of the generated tree.
+     * @param fanout is the number of subdirectories of every directory.
+     * @param depth is the number of levels of subdirectories below the root.
+     * @param filesPerDirectory is the number of files of every directory.
+     */
+    public Ext2ImageWriter tree(int fanout, int depth, int filesPerDirectory)
+    {
+        this.fanout = fanout;
+        this.depth = depth;
+        this.filesPerDirectory = filesPerDirectory;
+        return this;
+    }
+
+    /**
+     * Method that sets the range of the sizes of the generated files,
+     * drawn log-uniformly so that small files are as common as in
+     * real volumes.
+     */
+    public Ext2ImageWriter fileSizes(long minFileSize, long maxFileSize)
+    {
+        if(minFileSize < 0 || maxFileSize < minFileSize)
+            throw new IllegalArgumentException("Invalid file size range " + minFileSize + ":" + maxFileSize);
+
+        this.minFileSize = minFileSize;
+        this.maxFileSize = maxFileSize;
+        return this;
+    }
+
+    /**
+     * Method that sets the chance, from 0 to 1, that a block is not
+     * placed right after the block allocated before it.
+     */
+    public Ext2ImageWriter fragmentation(double fragmentation)
+    {
+        if(fragmentation < 0 || fragmentation > 1)
+            throw new IllegalArgumentException("Fragmentation must be between 0 and 1");
+
+        this.fragmentation = fragmentation;
+        return this;
+    }
+
+    /**
+     * Method that sets the seed of the sizes, the gaps and the content.
+     */
+    public Ext2ImageWriter seed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Method that chooses whether the data blocks are filled; blocks that
+     * are not filled read as zeros and cost no space in the image.
+     */
+    public Ext2ImageWriter fillData(boolean fillData)
+    {
+        this.fillData = fillData;
+        return this;
+    }
+
+    /**
+     * Method that adds a file to the root directory.
+     */
+    public Ext2ImageWriter addFile(String name, long size)
+    {
+        extraNames.add(name);
+        extraSizes.add(new long[]{size});
+        return this;
+    }
+
+    /**
+     * Method that adds a directory of files to the root directory.
+     * @param name is the name of the directory.
+     * @param files is the number of files of the directory.
+     * @param fileSize is the size of every file.
+     */
+    public Ext2ImageWriter addDirectory(String name, int files, long fileSize)
+    {
+        long[] sizes = new long[files + 1];
+        Arrays.fill(sizes, fileSize);
+        sizes[0] = -1;
+
+        extraNames.add(name);
+        extraSizes.add(sizes);
+        return this;
+    }
+
+    /**
+     * Method that writes the image.
+     * @param path is the path of the image, which is overwritten.
+     */
+    public void write(String path) throws IOException
+    {
+        if(blocksPerGroup == 0)
+            blocksPerGroup = blockSize * 8;
+        if(blocksPerGroup % 8 != 0 || blocksPerGroup > blockSize * 8 || blocksPerGroup < 64)
+            throw new IllegalArgumentException("Invalid number of blocks per group " + blocksPerGroup);
+
+        int perBlock = blockSize / Ext2RoutineHandler.generatorINodeSize;
+        if(iNodesPerGroup == 0)
+            iNodesPerGroup = (int) Math.max(perBlock, (long) blocksPerGroup * blockSize / 8192);
+        iNodesPerGroup = Math.min(blockSize * 8, (iNodesPerGroup + perBlock - 1) / perBlock * perBlock);
+
+        int requested = groups;
+
+        if(requested == 0)
+        {
+            //a dry run with the same seed allocates exactly what the real run will,
+            //and is repeated while the table of the groups it asks for outgrows its guess
+            int estimate = 1;
+
+            while(true)
+            {
+                groups = Integer.MAX_VALUE / blocksPerGroup;
+                tableGroups = estimate;
+                run(null);
+
+                long iNodeGroups = (nextINode - 1 + iNodesPerGroup - 1) / iNodesPerGroup;
+                long blockGroups = (nextBlock - firstDataBlock + blocksPerGroup - 1) / blocksPerGroup;
+                int needed = (int) Math.max(1, Math.max(iNodeGroups, blockGroups));
+
+                if(needed <= estimate)
+                    break;
+                estimate = needed;
+            }
+
+            groups = estimate;
+        }
+
+        Files.deleteIfExists(Paths.get(path));
+
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ))
+        {
+            run(channel);
+        }
+        finally
+        {
+            groups = requested;
+        }
+    }
+
+    /**
+     * Method that lays out the whole volume, writing it to a channel, or
+     * only counting what it allocates if the channel is null.
+     */
+    private void run(FileChannel channel) throws IOException
+    {
+        dryRun = channel == null;
+        image = channel;
+        random = new Random(seed);
+        largeFile = false;
+
+        firstDataBlock = blockSize == 1024 ? 1 : 0;
+        blockCount = firstDataBlock + (long) groups * blocksPerGroup;
+        if(!dryRun && blockCount > 0xffffffffL)
+            throw new IllegalStateException("The volume needs more than 2^32 blocks");
+        if(!dryRun && (long) groups * iNodesPerGroup > 0xffffffffL)
+            throw new IllegalStateException("The volume needs more than 2^32 inodes");
+
+        gdtBlocks = (int)(((long)(dryRun ? tableGroups : groups) * Ext2RoutineHandler.groupDescriptorSize + blockSize - 1) / blockSize);
+        iNodeTableBlocks = iNodesPerGroup * Ext2RoutineHandler.generatorINodeSize / blockSize;
+
+        if(!dryRun)
+            layoutGroups();
+
+        nextBlock = firstDataBlock;
+        nextINode = Ext2RoutineHandler.generatorFirstINode + 1;
+        pendingStart = -1;
+        pendingBlocks = 0;
+        pending = ByteBuffer.allocate(Math.max(blockSize, 1 << 20)).order(ByteOrder.LITTLE_ENDIAN);
+
+        int root = Ext2RoutineHandler.iNode_rootOffset;
+        int lostAndFound = Ext2RoutineHandler.generatorFirstINode;
+
+        writeDirectory(lostAndFound, root, new int[0], new String[0], new byte[0], 0);
+        writeTree(root, root, 0, true, lostAndFound);
+
+        flush();
+
+        if(!dryRun)
+            writeMetadata();
+    }
+
+    /**
+     * Method that writes a directory of the generated tree and, after it,
+     * the directories below it.
+     * @param self is the inode number of the directory.
+     * @param parent is the inode number of its parent.
+     * @param level is the depth of the directory, 0 for the root.
+     * @param isRoot is true for the root, which also holds the added entries.
+     * @param lostAndFound is the inode number of lost+found.
+     */
+    private void writeTree(int self, int parent, int level, boolean isRoot, int lostAndFound) throws IOException
+    {
+        int subdirectories = level < depth ? fanout : 0;
+        int files = filesPerDirectory;
+        int extra = isRoot ? extraNames.size() + 1 : 0;
+        int count = subdirectories + files + extra;
+
+        int[] numbers = new int[count];
+        String[] names = new String[count];
+        byte[] types = new byte[count];
+        int k = 0;
+
+        if(isRoot)
+        {
+            numbers[k] = lostAndFound;
+            names[k] = "lost+found";
+            types[k++] = Ext2RoutineHandler.generatorTypeDirectory;
+        }
+
+        int firstSubdirectory = k;
+        for(int i = 0; i < subdirectories; ++i, ++k)
+        {
+            numbers[k] = allocateINode();
+            names[k] = "d" + i;
+            types[k] = Ext2RoutineHandler.generatorTypeDirectory;
+        }
+
+        for(int i = 0; i < files; ++i, ++k)
+        {
+            numbers[k] = allocateINode();
+            names[k] = "f" + i;
+            types[k] = Ext2RoutineHandler.generatorTypeFile;
+            writeRegularFile(numbers[k], drawSize());
+        }
+
+        ArrayList<Integer> extraDirectories = new ArrayList<>();
+        if(isRoot)
+        {
+            for(int i = 0; i < extraNames.size(); ++i, ++k)
+            {
+                long[] sizes = extraSizes.get(i);
+
+                numbers[k] = allocateINode();
+                names[k] = extraNames.get(i);
+
+                if(sizes[0] < 0)
+                {
+                    types[k] = Ext2RoutineHandler.generatorTypeDirectory;
+                    extraDirectories.add(k);
+                }
+                else
+                {
+                    types[k] = Ext2RoutineHandler.generatorTypeFile;
+                    writeRegularFile(numbers[k], sizes[0]);
+                }
+            }
+        }
+
+        writeDirectory(self, parent, numbers, names, types, subdirectories + (isRoot ? 1 + extraDirectories.size() : 0));
+
+        for(int i = 0; i < subdirectories; ++i)
+            writeTree(numbers[firstSubdirectory + i], self, level + 1, false, lostAndFound);
+
+        for(int entry : extraDirectories)
+        {
+            long[] sizes = extraSizes.get(entry - firstSubdirectory - subdirectories - files);
+            int[] fileNumbers = new int[sizes.length - 1];
+            String[] fileNames = new String[fileNumbers.length];
+            byte[] fileTypes = new byte[fileNumbers.length];
+
+            for(int i = 0; i < fileNumbers.length; ++i)
+            {
+                fileNumbers[i] = allocateINode();
+                fileNames[i] = "file" + i;
+                fileTypes[i] = Ext2RoutineHandler.generatorTypeFile;
+                writeRegularFile(fileNumbers[i], sizes[i + 1]);
+            }
+
+            writeDirectory(numbers[entry], self, fileNumbers, fileNames, fileTypes, 0);
+        }
+    }
+
+    /**
+     * Method that draws the size of a generated file.
+     */
+    private long drawSize()
+    {
+        if(minFileSize == maxFileSize)
+            return minFileSize;
+
+        double low = Math.log(minFileSize + 1);
+        double high = Math.log(maxFileSize + 1);
+
+        return Math.min(maxFileSize, (long) Math.exp(low + random.nextDouble() * (high - low)) - 1);
+    }
+
+    /**
+     * Method that packs the entries of a directory into blocks and writes
+     * the directory and its inode.
+     * @param subdirectories is the number of entries that are directories,
+     * which link back to this one.
+     */
+    private void writeDirectory(int self, int parent, int[] numbers, String[] names, byte[] types, int subdirectories) throws IOException
+    {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        byte[] block = new byte[blockSize];
+        ByteBuffer entries = ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN);
+        int last = -1;
+
+        for(int i = -2; i < numbers.length; ++i)
+        {
+            byte[] name = i == -2 ? new byte[]{'.'} : i == -1 ? new byte[]{'.', '.'} : names[i].getBytes();
+            int number = i == -2 ? self : i == -1 ? parent : numbers[i];
+            byte type = i < 0 ? Ext2RoutineHandler.generatorTypeDirectory : types[i];
+            int length = (8 + name.length + 3) & ~3;
+
+            if(entries.position() + length > blockSize)
+            {
+                //the last entry of a block covers the rest of it
+                entries.putShort(last + 4, (short)(blockSize - last));
+                blocks.write(block, 0, blockSize);
+                Arrays.fill(block, (byte) 0);
+                entries.clear();
+            }
+
+            last = entries.position();
+            entries.putInt(number);
+            entries.putShort((short) length);
+            entries.put((byte) name.length);
+            entries.put(type);
+            entries.put(name);
+            entries.position(last + length);
+        }
+
+        entries.putShort(last + 4, (short)(blockSize - last));
+        blocks.write(block, 0, blockSize);
+
+        byte[] content = blocks.toByteArray();
+        int[] pointers = new int[15];
+        long allocated = writeData(self, content.length, content, pointers);
+
+        writeINode(self, Ext2RoutineHandler.IFDIR | 0755, content.length, 2 + subdirectories, allocated, pointers);
+        if(!dryRun)
+            ++directories[groupOf(self)];
+    }
+
+    /**
+     * Method that writes the data and the inode of a regular file.
+     */
+    private void writeRegularFile(int number, long size) throws IOException
+    {
+        int[] pointers = new int[15];
+        long allocated = writeData(number, size, null, pointers);
+
+        if(size >= 1L << 31)
+            largeFile = true;
+
+        writeINode(number, Ext2RoutineHandler.IFREG | 0644, size, 1, allocated, pointers);
+    }
+
+    /**
+     * Method that allocates and writes the blocks of a file, the indirect
+     * blocks being placed before the blocks they point to, as ext2 does.
+     * @param number is the inode number, which seeds the content.
+     * @param size is the size of the file.
+     * @param content holds the content, or null for generated content.
+     * @param pointers receives the 15 block pointers.
+     * @return the number of blocks allocated, indirect blocks included.
+     */
+    private long writeData(int number, long size, byte[] content, int[] pointers) throws IOException
+    {
+        long blocks = (size + blockSize - 1) / blockSize;
+        long[] state = {0, 0};
+        FileContent source = new FileContent(number, content);
+
+        for(int i = 0; i < 12 && state[0] < blocks; ++i)
+            pointers[i] = dataBlock(source, state);
+
+        for(int level = 1; level <= 3 && state[0] < blocks; ++level)
+            pointers[11 + level] = indirectBlock(level, blocks, source, state);
+
+        return state[0] + state[1];
+    }
+
+    /**
+     * Method that writes an indirect block and the tree below it.
+     * @param state holds the number of data blocks written so far and the
+     * number of indirect blocks written so far.
+     */
+    private int indirectBlock(int level, long blocks, FileContent source, long[] state) throws IOException
+    {
+        long block = allocateBlock();
+        int perBlock = blockSize / 4;
+        ByteBuffer pointers = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        ++state[1];
+        for(int i = 0; i < perBlock && state[0] < blocks; ++i)
+            pointers.putInt(i * 4, level == 1 ? dataBlock(source, state) : indirectBlock(level - 1, blocks, source, state));
+
+        writeBlock(block, pointers.array());
+
+        return (int) block;
+    }
+
+    /**
+     * Method that allocates and writes the next data block of a file.
+     */
+    private int dataBlock(FileContent source, long[] state) throws IOException
+    {
+        long block = allocateBlock();
+
+        if(source.content != null)
+            writeBlock(block, Arrays.copyOfRange(source.content, (int)(state[0] * blockSize), (int)((state[0] + 1) * blockSize)));
+        else if(fillData)
+            writeBlock(block, source.next(blockSize));
+
+        ++state[0];
+
+        return (int) block;
+    }
+
+    /**
+     * Class to represent the generated content of a file.
+     */
+    private static class FileContent
+    {
+        private final byte[] content;
+        private final SplittableRandom random;
+        private byte[] block;
+
+        FileContent(int number, byte[] content)
+        {
+            this.content = content;
+            this.random = new SplittableRandom(number * 0x9E3779B97F4A7C15L);
+        }
+
+        byte[] next(int blockSize)
+        {
+            if(block == null)
+                block = new byte[blockSize];
+
+            for(int i = 0; i < blockSize; i += 8)
+            {
+                long word = random.nextLong();
+
+                for(int b = 0; b < 8; ++b)
+                    block[i + b] = (byte)(word >>> (8 * b));
+            }
+
+            return block;
+        }
+    }
+
+    /**
+     * Method that takes the next free block, skipping the metadata of the
+     * groups, and sometimes a gap of free blocks.
+     */
+    private long allocateBlock()
+    {
+        if(fragmentation > 0 && random.nextDouble() < fragmentation)
+            nextBlock += 1 + random.nextInt(Ext2RoutineHandler.generatorMaxGap);
+
+        while(true)
+        {
+            long group = (nextBlock - firstDataBlock) / blocksPerGroup;
+            long inGroup = (nextBlock - firstDataBlock) % blocksPerGroup;
+            long metadata = (hasSuperblock((int) group) ? 1 + gdtBlocks : 0) + 2 + iNodeTableBlocks;
+
+            if(group >= groups)
+                throw new IllegalStateException("The image is full: give more groups or fewer files");
+
+            if(inGroup < metadata)
+            {
+                nextBlock += metadata - inGroup;
+                continue;
+            }
+
+            long block = nextBlock++;
+
+            if(!dryRun)
+                blockBitmaps[(int) group][(int)(inGroup >>> 3)] |= 1 << (inGroup & 7);
+
+            return block;
+        }
+    }
+
+    /**
+     * Method that takes the next free inode.
+     */
+    private int allocateINode()
+    {
+        if(!dryRun && (long) nextINode > (long) groups * iNodesPerGroup)
+            throw new IllegalStateException("Out of inodes: give more groups or more inodes per group");
+
+        return nextINode++;
+    }
+
+    private int groupOf(int number)
+    {
+        return (number - 1) / iNodesPerGroup;
+    }
+
+    /**
+     * Method that writes an inode and marks it used.
+     */
+    private void writeINode(int number, int mode, long size, int links, long blocks, int[] pointers) throws IOException
+    {
+        if(dryRun)
+            return;
+
+        ByteBuffer node = ByteBuffer.allocate(Ext2RoutineHandler.generatorINodeSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        node.putShort(Ext2RoutineHandler.iNode_typeOffset, (short) mode);
+        node.putInt(Ext2RoutineHandler.iNode_lowerBitsOffset, (int) size);
+        node.putInt(Ext2RoutineHandler.iNode_lastAccessOffset, time);
+        node.putInt(Ext2RoutineHandler.iNode_creationTime, time);
+        node.putInt(Ext2RoutineHandler.iNode_lastModificationOffset, time);
+        node.putShort(Ext2RoutineHandler.iNode_hardLinksOffset, (short) links);
+        node.putInt(Ext2RoutineHandler.generatorSectorsOffset, (int)(blocks * (blockSize / 512)));
+        for(int i = 0; i < 15; ++i)
+            node.putInt(Ext2RoutineHandler.iNode_blockPointerOffset + 4 * i, pointers[i]);
+        if((mode & 0xF000) == Ext2RoutineHandler.IFREG)
+            node.putInt(Ext2RoutineHandler.iNode_upperBitsOffset, (int)(size >>> 32));
+
+        int index = number - 1;
+        int group = index / iNodesPerGroup;
+        int inGroup = index % iNodesPerGroup;
+
+        iNodeBitmaps[group][inGroup >>> 3] |= 1 << (inGroup & 7);
+
+        long table = groupStart(group) + (hasSuperblock(group) ? 1 + gdtBlocks : 0) + 2;
+        image.write(node, table * blockSize + (long) inGroup * Ext2RoutineHandler.generatorINodeSize);
+    }
+
+    /**
+     * Method that writes a block, merging it with the blocks written just
+     * before it so that contiguous data costs few writes.
+     */
+    private void writeBlock(long block, byte[] data) throws IOException
+    {
+        if(dryRun)
+            return;
+
+        if(pendingStart < 0 || block != pendingStart + pendingBlocks || pending.remaining() < blockSize)
+        {
+            flush();
+            pendingStart = block;
+        }
+
+        pending.put(data, 0, blockSize);
+        ++pendingBlocks;
+    }
+
+    private void flush() throws IOException
+    {
+        if(dryRun || pendingBlocks == 0)
+        {
+            pendingBlocks = 0;
+            return;
+        }
+
+        pending.flip();
+        long position = pendingStart * blockSize;
+        while(pending.hasRemaining())
+            position += image.write(pending, position);
+
+        pending.clear();
+        pendingBlocks = 0;
+        pendingStart = -1;
+    }
+
+    /**
+     * Method that marks the metadata of every group as used.
+     */
+    private void layoutGroups()
+    {
+        blockBitmaps = new byte[groups][blockSize];
+        iNodeBitmaps = new byte[groups][blockSize];
+        directories = new int[groups];
+
+        for(int group = 0; group < groups; ++group)
+        {
+            int metadata = (hasSuperblock(group) ? 1 + gdtBlocks : 0) + 2 + iNodeTableBlocks;
+
+            for(int i = 0; i < metadata; ++i)
+                blockBitmaps[group][i >>> 3] |= 1 << (i & 7);
+
+            //the bits past the end of the group are set, as mke2fs does
+            for(int i = blocksPerGroup; i < blockSize * 8; ++i)
+                blockBitmaps[group][i >>> 3] |= 1 << (i & 7);
+            for(int i = iNodesPerGroup; i < blockSize * 8; ++i)
+                iNodeBitmaps[group][i >>> 3] |= 1 << (i & 7);
+        }
+
+        //the reserved inodes, the bad blocks inode and the root among them
+        for(int i = 0; i < Ext2RoutineHandler.generatorFirstINode - 1; ++i)
+            iNodeBitmaps[0][i >>> 3] |= 1 << (i & 7);
+    }
+
+    private long groupStart(int group)
+    {
+        return firstDataBlock + (long) group * blocksPerGroup;
+    }
+
+    /**
+     * @return true if the group holds a copy of the superblock, which with
+     * sparse_super are groups 0 and 1 and the powers of 3, 5 and 7.
+     */
+    private static boolean hasSuperblock(int group)
+    {
+        if(group <= 1)
+            return true;
+
+        return isPower(group, 3) || isPower(group, 5) || isPower(group, 7);
+    }
+
+    private static boolean isPower(int value, int base)
+    {
+        long power = base;
+
+        while(power < value)
+            power *= base;
+
+        return power == value;
+    }
+
+    /**
+     * Method that writes the bitmaps, the group descriptor tables and the
+     * superblocks once every block and inode was allocated.
+     */
+    private void writeMetadata() throws IOException
+    {
+        ByteBuffer table = ByteBuffer.allocate(gdtBlocks * blockSize).order(ByteOrder.LITTLE_ENDIAN);
+        long freeBlocks = 0;
+        long freeINodes = 0;
+
+        for(int group = 0; group < groups; ++group)
+        {
+            long start = groupStart(group) + (hasSuperblock(group) ? 1 + gdtBlocks : 0);
+            int groupFreeBlocks = blocksPerGroup - countBits(blockBitmaps[group], blocksPerGroup);
+            int groupFreeINodes = iNodesPerGroup - countBits(iNodeBitmaps[group], iNodesPerGroup);
+            int descriptor = group * Ext2RoutineHandler.groupDescriptorSize;
+
+            table.putInt(descriptor + Ext2RoutineHandler.blockBitmapOffset, (int) start);
+            table.putInt(descriptor + Ext2RoutineHandler.iNodeBitmapOffset, (int)(start + 1));
+            table.putInt(descriptor + Ext2RoutineHandler.iNodeTableOffset, (int)(start + 2));
+            table.putShort(descriptor + Ext2RoutineHandler.freeBlocksOffset, (short) groupFreeBlocks);
+            table.putShort(descriptor + Ext2RoutineHandler.freeINodesOffset, (short) groupFreeINodes);
+            table.putShort(descriptor + Ext2RoutineHandler.usedDirectoriesOffset, (short) directories[group]);
+
+            image.write(ByteBuffer.wrap(blockBitmaps[group]), start * blockSize);
+            image.write(ByteBuffer.wrap(iNodeBitmaps[group]), (start + 1) * blockSize);
+
+            freeBlocks += groupFreeBlocks;
+            freeINodes += groupFreeINodes;
+        }
+
+        ByteBuffer superblock = ByteBuffer.allocate(Ext2RoutineHandler.superblockSize).order(ByteOrder.LITTLE_ENDIAN);
+        Random uuid = new Random(seed);
+
+        superblock.putInt(Ext2RoutineHandler.iNodeCounter, groups * iNodesPerGroup);
+        superblock.putInt(Ext2RoutineHandler.blockCounter, (int) blockCount);
+        superblock.putInt(Ext2RoutineHandler.generatorFreeBlocksOffset, (int) freeBlocks);
+        superblock.putInt(Ext2RoutineHandler.generatorFreeINodesOffset, (int) freeINodes);
+        superblock.putInt(Ext2RoutineHandler.firstDataBlockOffset, firstDataBlock);
+        superblock.putInt(Ext2RoutineHandler.fileSystemBlockSizeOffset, Integer.numberOfTrailingZeros(blockSize / Ext2RoutineHandler.minimumBlockSize));
+        superblock.putInt(Ext2RoutineHandler.fileSystemBlockSizeOffset + 4, Integer.numberOfTrailingZeros(blockSize / Ext2RoutineHandler.minimumBlockSize));
+        superblock.putInt(Ext2RoutineHandler.blocksInGroup, blocksPerGroup);
+        superblock.putInt(Ext2RoutineHandler.blocksInGroup + 4, blocksPerGroup);
+        superblock.putInt(Ext2RoutineHandler.iNodesInGroup, iNodesPerGroup);
+        superblock.putInt(Ext2RoutineHandler.generatorWriteTimeOffset, time);
+        superblock.putShort(Ext2RoutineHandler.generatorWriteTimeOffset + 6, (short) -1);
+        superblock.putShort(Ext2RoutineHandler.magicNumberOffset, Ext2RoutineHandler.magicNumber);
+        superblock.putShort(Ext2RoutineHandler.magicNumberOffset + 2, (short) 1);
+        superblock.putShort(Ext2RoutineHandler.magicNumberOffset + 4, (short) 1);
+        superblock.putInt(Ext2RoutineHandler.generatorLastCheckOffset, time);
+        superblock.putInt(Ext2RoutineHandler.generatorRevisionOffset, 1);
+        superblock.putInt(Ext2RoutineHandler.generatorRevisionOffset + 8, Ext2RoutineHandler.generatorFirstINode);
+        superblock.putShort(Ext2RoutineHandler.iNodeSize, (short) Ext2RoutineHandler.generatorINodeSize);
+        superblock.putInt(Ext2RoutineHandler.generatorFeaturesOffset + 4, Ext2RoutineHandler.generatorFiletypeFeature);
+        superblock.putInt(Ext2RoutineHandler.generatorFeaturesOffset + 8,
+                          Ext2RoutineHandler.generatorSparseSuperFeature | (largeFile ? Ext2RoutineHandler.generatorLargeFileFeature : 0));
+        for(int i = 0; i < 16; ++i)
+            superblock.put(Ext2RoutineHandler.generatorFeaturesOffset + 12 + i, (byte) uuid.nextInt());
+        superblock.put(Ext2RoutineHandler.fileSystemOffset, "synthetic".getBytes());
+
+        for(int group = 0; group < groups; ++group)
+        {
+            if(!hasSuperblock(group))
+                continue;
+
+            long start = groupStart(group);
+            superblock.putShort(Ext2RoutineHandler.iNodeSize + 2, (short) group);
+
+            //the primary superblock sits 1024 bytes into the volume whatever the block size
+            long position = group == 0 ? Ext2RoutineHandler.superblockOffset : start * blockSize;
+            image.write(superblock.clear(), position);
+            image.write(table.clear(), (start + 1) * blockSize);
+        }
+
+        //the image must reach its last block even if nothing was written there
+        if(image.size() < blockCount * blockSize)
+            image.write(ByteBuffer.allocate(1), blockCount * blockSize - 1);
+    }
+
+    private static int countBits(byte[] bitmap, int bits)
+    {
+        int count = 0;
+
+        for(int i = 0; i < bits; ++i)
+            count += (bitmap[i >>> 3] >>> (i & 7)) & 1;
+
+        return count;
+    }
+
+    /**
+     * Method that builds a writer from command line options:
+     * [-block 1024|2048|4096] [-groups N] [-group-blocks N] [-group-inodes N]
+     * [-fanout N] [-depth N] [-files N] [-size MIN:MAX] [-fragmentation 0..1]
+     * [-seed N] [-file NAME:SIZE] [-dir NAME:FILES:SIZE] [-nodata]
+     * @param options holds the options.
+     * @param from is the index of the first option.
+     * @return the writer.
+     */
+    public static Ext2ImageWriter parse(String[] options, int from)
+    {
+        Ext2ImageWriter writer = new Ext2ImageWriter();
+        int fanout = writer.fanout;
+        int depth = writer.depth;
+        int files = writer.filesPerDirectory;
+
+        for(int i = from; i < options.length; ++i)
+        {
+            String option = options[i];
+
+            if(option.equals("-nodata"))
+            {
+                writer.fillData(false);
+                continue;
+            }
+            if(i + 1 >= options.length)
+                throw new IllegalArgumentException("Missing value for " + option);
+
+            String value = options[++i];
+            String[] parts = value.split(":");
+
+            if(option.equals("-block"))
+                writer.blockSize(Integer.parseInt(value));
+            else if(option.equals("-groups"))
+                writer.groups(Integer.parseInt(value));
+            else if(option.equals("-group-blocks"))
+                writer.blocksPerGroup(Integer.parseInt(value));
+            else if(option.equals("-group-inodes"))
+                writer.iNodesPerGroup(Integer.parseInt(value));
+            else if(option.equals("-fanout"))
+                fanout = Integer.parseInt(value);
+            else if(option.equals("-depth"))
+                depth = Integer.parseInt(value);
+            else if(option.equals("-files"))
+                files = Integer.parseInt(value);
+            else if(option.equals("-size") && parts.length == 2)
+                writer.fileSizes(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            else if(option.equals("-fragmentation"))
+                writer.fragmentation(Double.parseDouble(value));
+            else if(option.equals("-seed"))
+                writer.seed(Long.parseLong(value));
+            else if(option.equals("-file") && parts.length == 2)
+                writer.addFile(parts[0], Long.parseLong(parts[1]));
+            else if(option.equals("-dir") && parts.length == 3)
+                writer.addDirectory(parts[0], Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+            else
+                throw new IllegalArgumentException("Unknown option " + option + " " + value);
+        }
+
+        return writer.tree(fanout, depth, files);
+    }
+
+    /**
+     * Method that writes an image from the command line:
+     * Ext2ImageWriter IMAGE [options], the options being those of parse.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length == 0)
+        {
+            System.out.println("Usage: Ext2ImageWriter IMAGE [-block 1024|2048|4096] [-groups N] [-group-blocks N] [-group-inodes N]"
+                               + " [-fanout N] [-depth N] [-files N] [-size MIN:MAX] [-fragmentation 0..1] [-seed N]"
+                               + " [-file NAME:SIZE] [-dir NAME:FILES:SIZE] [-nodata]");
+            return;
+        }
+
+        long begin = System.nanoTime();
+        parse(args, 1).write(args[0]);
+        System.out.println(args[0] + " written in " + (System.nanoTime() - begin) / 1000000 + " ms");
+    }
+}
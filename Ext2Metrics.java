@@ -0,0 +1,158 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import javax.management.*;
+
+/**
+ * Class that gathers the metrics of the reader: the counters kept by
+ * Ext2Reader, INode and FileInfo on their hot paths, and the latency
+ * histograms of the commands. The counters are striped LongAdders, so
+ * counting costs an uncontended add even with many threads reading, and
+ * they are only summed when the metrics are printed by the stats command
+ * or read through JMX.
+ * @author Vlad Diaconu
+ */
+public class Ext2Metrics implements Ext2MetricsMBean
+{
+    private static final Map<String, LatencyHistogram> commands = new LinkedHashMap<>();
+    private static boolean registered = false;
+
+    static
+    {
+        for(String command : Ext2RoutineHandler.timedCommands)
+            commands.put(command, new LatencyHistogram(command));
+    }
+
+    /**
+     * Method that finds the histogram of a command.
+     * @param command is the name of the command.
+     * @return the histogram, or null if the command is not timed.
+     */
+    public static LatencyHistogram getCommand(String command)
+    {
+        return commands.get(command);
+    }
+
+    /**
+     * Method that records the latency of a command, if it is timed.
+     * @param command is the name of the command.
+     * @param begin is the System.nanoTime() the command started at.
+     */
+    public static void record(String command,long begin)
+    {
+        LatencyHistogram histogram = commands.get(command);
+
+        if(histogram != null)
+            histogram.record(System.nanoTime() - begin);
+    }
+
+    /**
+     * Method that publishes the metrics on the platform MBean server,
+     * the first time it is called.
+     */
+    public static synchronized void register()
+    {
+        if(registered)
+            return;
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Ext2Metrics(), new ObjectName(Ext2RoutineHandler.metricsObjectName));
+            registered = true;
+        }
+        catch(JMException jme)
+        {
+            System.out.println(jme);
+        }
+    }
+
+    /**
+     * Method that prints the counters and the latencies of the commands,
+     * as the stats command does.
+     * @param out is the stream the metrics are printed to.
+     */
+    public static void print(PrintStream out)
+    {
+        Ext2Metrics metrics = new Ext2Metrics();
+
+        out.printf("volume reads      %14d%n", metrics.getVolumeReads());
+        out.printf("mapped reads      %14d%n", metrics.getMappedReads());
+        out.printf("bytes read        %14d%n", metrics.getBytesRead());
+        out.printf("block cache hits  %14d%n", metrics.getBlockCacheHits());
+        out.printf("block cache misses%14d%n", metrics.getBlockCacheMisses());
+        out.printf("inode decodes     %14d%n", metrics.getINodeDecodes());
+        out.printf("directory parses  %14d%n", metrics.getDirectoryParses());
+        out.printf("directory entries %14d%n", metrics.getDirectoryEntries());
+
+        out.println();
+        out.println("command   count    mean us     p50 us     p99 us     max us");
+        for(String line : metrics.getCommandLatencies())
+            out.println(line);
+    }
+
+    public long getVolumeReads()
+    {
+        return Ext2Reader.volumeReads.sum();
+    }
+
+    public long getMappedReads()
+    {
+        return Ext2Reader.mappedReads.sum();
+    }
+
+    public long getBytesRead()
+    {
+        return Ext2Reader.bytesRead.sum();
+    }
+
+    public long getBlockCacheHits()
+    {
+        return Ext2Reader.blockCacheHits.sum();
+    }
+
+    public long getBlockCacheMisses()
+    {
+        return Ext2Reader.blockCacheMisses.sum();
+    }
+
+    public long getINodeDecodes()
+    {
+        return INode.decodes.sum();
+    }
+
+    public long getDirectoryParses()
+    {
+        return FileInfo.directoryParses.sum();
+    }
+
+    public long getDirectoryEntries()
+    {
+        return FileInfo.directoryEntries.sum();
+    }
+
+    public String[] getCommandLatencies()
+    {
+        String[] lines = new String[commands.size()];
+        int i = 0;
+
+        for(LatencyHistogram histogram : commands.values())
+            lines[i++] = histogram.toString();
+
+        return lines;
+    }
+
+    public void reset()
+    {
+        Ext2Reader.volumeReads.reset();
+        Ext2Reader.mappedReads.reset();
+        Ext2Reader.bytesRead.reset();
+        Ext2Reader.blockCacheHits.reset();
+        Ext2Reader.blockCacheMisses.reset();
+        INode.decodes.reset();
+        FileInfo.directoryParses.reset();
+        FileInfo.directoryEntries.reset();
+
+        for(LatencyHistogram histogram : commands.values())
+            histogram.reset();
+    }
+}
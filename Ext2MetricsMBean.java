@@ -0,0 +1,58 @@
+/**
+ * Interface of the metrics of the reader published through JMX,
+ * under the name ext2:type=Metrics.
+ * @author Vlad Diaconu
+ */
+public interface Ext2MetricsMBean
+{
+    /**
+     * @return the number of positional reads of the volume's channel.
+     */
+    long getVolumeReads();
+
+    /**
+     * @return the number of reads served by the memory-mapped windows.
+     */
+    long getMappedReads();
+
+    /**
+     * @return the number of bytes read from the volume, either way.
+     */
+    long getBytesRead();
+
+    /**
+     * @return the number of blocks found in the block cache.
+     */
+    long getBlockCacheHits();
+
+    /**
+     * @return the number of blocks that had to be read from the volume.
+     */
+    long getBlockCacheMisses();
+
+    /**
+     * @return the number of inodes decoded from the inode tables.
+     */
+    long getINodeDecodes();
+
+    /**
+     * @return the number of directories parsed.
+     */
+    long getDirectoryParses();
+
+    /**
+     * @return the number of entries of the directories parsed.
+     */
+    long getDirectoryEntries();
+
+    /**
+     * @return one line per timed command: its count and its mean,
+     * median, 99th percentile and largest latencies in microseconds.
+     */
+    String[] getCommandLatencies();
+
+    /**
+     * Method that sets every counter and histogram back to zero.
+     */
+    void reset();
+}
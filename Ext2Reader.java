@@ -1,37 +1,83 @@
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 /**
  * Class to represent an ext2File that can read byte-wise
  * and capture the disk name. 
+ * Every read names its own position within the volume, so a single
+ * reader can be shared by any number of threads.
+ * The reads, the bytes and the block cache lookups of every reader are
+ * counted by striped counters shown by Ext2Metrics.
  * @author Vlad Diaconu
  */
 public class Ext2Reader
 {
-    private RandomAccessFile volume;
-    private long position = 0L;
+    private final FileChannel volume;
+    private final Volume image;
+    private final BlockCache cache;
+    private final INodeCache iNodes;
+    private final int blockSize;
+
+    static final LongAdder volumeReads = new LongAdder();
+    static final LongAdder mappedReads = new LongAdder();
+    static final LongAdder bytesRead = new LongAdder();
+    static final LongAdder blockCacheHits = new LongAdder();
+    static final LongAdder blockCacheMisses = new LongAdder();
 
     /**
      * Construct the ext2 filesystem-image.
      * @param volume is the volume of the image, 
      * the first thing the program reads.
+     * @param blockSize is the size of a block of the filesystem,
+     * as given by its superblock.
+     */
+    public Ext2Reader(Volume volume, int blockSize)
+    {
+        this(volume, blockSize, Ext2RoutineHandler.blockCacheSize);
+    }
+
+    /**
+     * Construct the ext2 filesystem-image with a block cache of a given size.
+     * @param volume is the volume of the image,
+     * the first thing the program reads.
+     * @param blockSize is the size of a block of the filesystem,
+     * as given by its superblock.
+     * @param cacheSize is the number of bytes the block cache may hold.
      */
-    public Ext2Reader(Volume volume)
+    public Ext2Reader(Volume volume, int blockSize, long cacheSize)
     {
-        this.volume = volume.getRAF();
+        this.volume = volume.getChannel();
+        this.image = volume;
+        this.blockSize = blockSize;
+        this.cache = new BlockCache(cacheSize, blockSize);
+        this.iNodes = new INodeCache(Ext2RoutineHandler.iNodeCacheSize);
     }
 
     /**
      * Retreive the name of the (or path to the) filesystem.
+     * @param input is the reader of the console, shared with the commands
+     * that follow so that no typed line is lost to another reader's buffer.
      * @return an (expected) string as the name or path to 
-     * the filesystem.
+     * the filesystem, or null at the end of the input.
      */
-    public static String getFileSystem()
+    public static String getFileSystem(BufferedReader input)
     {
-        Scanner s = new Scanner(System.in);
         System.out.println("Give the name of the disk to read (if in the same directory with this) or provide the path to reach it.");
         System.out.print("Disk name: ");
 
-        return s.nextLine();
+        try
+        {
+            String line = input.readLine();
+
+            return line == null ? null : line.trim();
+        }
+        catch(IOException ioe)
+        {
+            System.out.println(ioe);
+            return null;
+        }
     }
 
     /**
@@ -45,19 +91,7 @@ public class Ext2Reader
         if(start > 0)
         {
 
-            byte[] readData = new byte[(int) size];
-           
-            try
-            {   
-                volume.seek(start);
-                volume.readFully(readData);
-            }
-            catch(IOException ioe)
-            {
-                System.out.println(ioe);
-            }
-        
-            return readData;
+            return readBytes(start, (int) size);
         }
         else
         {
@@ -66,71 +100,218 @@ public class Ext2Reader
     }
 
     /**
-     * Start reading byte blocks from the start of 
-     * the file and continue until @param size is 
-     * reached.
-     * This method may read over the size given.
-     * @return readData, and array of bytes
+     * Start reading @param size bytes from @param start
+     * without copying them when the volume is memory-mapped.
+     * If the volume is read through the random access file, or
+     * the range crosses a mapped window, the bytes are copied
+     * into a new buffer instead.
+     * @return a little endian buffer holding the bytes.
      */
-    public byte[] readFile(long size)
+    public ByteBuffer slice(long start, int size)
     {
-        byte[] readData = new byte[(int) size];
-           
-        try
-        {   
-            volume.seek(position);
-            volume.readFully(readData);
+        ByteBuffer view = image.slice(start, size);
+
+        if(view == null)
+            return ByteBuffer.wrap(readBytes(start, size)).order(ByteOrder.LITTLE_ENDIAN);
+
+        mappedReads.increment();
+        bytesRead.add(size);
+        recordRead(new Ext2Events.BlockRead(), start, size, false, true);
+
+        return view;
+    }
+
+    /**
+     * Read a whole block of the volume through the block cache.
+     * Blocks that were read recently are returned without touching
+     * the volume.
+     * @param block is the physical block number.
+     * @return a little endian buffer holding the content of the block.
+     */
+    public ByteBuffer readBlock(long block)
+    {
+        byte[] data = cache.get(block);
+
+        if(data == null)
+        {
+            blockCacheMisses.increment();
+            data = readBytes(block * blockSize, blockSize);
+            cache.put(block, data);
         }
-        catch(IOException ioe)
+        else
         {
-            System.out.println(ioe);
+            blockCacheHits.increment();
+            recordRead(new Ext2Events.BlockRead(), block * blockSize, blockSize, true, false);
         }
-        
-        return readData;
+
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
     }
 
     /**
-     * Start reading byte blocks from the start of 
-     * the file and continue until @param size is 
-     * reached.
-     * This method may read over the size given.
-     * @return readData, and array of bytes
+     * Read a run of contiguous blocks of the volume with a single read.
+     * The run is served from the block cache when every block of it is
+     * cached; otherwise it is read at once and its blocks are cached.
+     * @param firstBlock is the physical number of the first block.
+     * @param count is the number of blocks of the run.
+     * @return a little endian buffer holding the content of the run.
      */
-    public byte[] readFromFile(Directory dir,long start,long end)
+    public ByteBuffer readRun(long firstBlock, int count)
     {
-        byte[] readData = new byte[(int)(end  - start)];
+        if(count == 1)
+            return readBlock(firstBlock);
 
-        try
-        {   
-            volume.seek(dir.getBlock() + start);
-            volume.readFully(readData);
+        byte[] data = new byte[count * blockSize];
+        int k = 0;
+
+        for(; k < count; ++k)
+        {
+            byte[] block = cache.get(firstBlock + k);
+
+            if(block == null)
+                break;
+            System.arraycopy(block, 0, data, k * blockSize, blockSize);
         }
-        catch(IOException ioe)
+
+        blockCacheHits.add(k);
+
+        if(k == count)
+            recordRead(new Ext2Events.BlockRead(), firstBlock * blockSize, data.length, true, false);
+        else
         {
-            System.out.println(ioe);
+            blockCacheMisses.add(count - k);
+            readInto(firstBlock * blockSize, data, 0, data.length);
+
+            for(k = 0; k < count; ++k)
+                cache.put(firstBlock + k, Arrays.copyOfRange(data, k * blockSize, (k + 1) * blockSize));
         }
-        
+
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the size of a block of the filesystem, in bytes.
+     * Every block number is converted to a byte offset with it.
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * @return the channel of the volume, used to transfer data
+     * without copying it through the heap.
+     */
+    public FileChannel getChannel()
+    {
+        return image.getChannel();
+    }
+
+    /**
+     * @return the cache holding the blocks read through readBlock().
+     */
+    public BlockCache getBlockCache()
+    {
+        return cache;
+    }
+
+    /**
+     * @return the cache holding the inodes decoded from this volume.
+     */
+    public INodeCache getINodeCache()
+    {
+        return iNodes;
+    }
+
+    /**
+     * Method that copies @param size bytes from @param start, either
+     * from the mapped windows or through a positional read.
+     * @return readData, and array of bytes
+     */
+    private byte[] readBytes(long start, int size)
+    {
+        byte[] readData = new byte[size];
+
+        readInto(start, readData, 0, size);
+
         return readData;
     }
 
     /**
-     * Change the position from which you start reading
-     * the bytes with the read() and readFile().
-     * @param position is the desired start in order to read
-     * bytes.
+     * Method that reads bytes of the volume into an existing array,
+     * so that callers can reuse a single buffer.
+     * @param start is the byte offset within the volume.
+     * @param destination is the array receiving the bytes.
+     * @param offset is the first index written in destination.
+     * @param size is the number of bytes to read.
      */
-    public void seek(long position)
+    public void readInto(long start, byte[] destination, int offset, int size)
     {
-        this.position = position;
+        ByteBuffer view = image.slice(start, size);
+
+        //reads through the channel record their own event
+        if(view != null)
+        {
+            Ext2Events.BlockRead event = new Ext2Events.BlockRead();
+            event.begin();
+
+            mappedReads.increment();
+            bytesRead.add(size);
+            view.get(destination, offset, size);
+            recordRead(event, start, size, false, true);
+            return;
+        }
+
+        readInto(start, ByteBuffer.wrap(destination, offset, size));
     }
 
     /**
-     * @return the position from which the program last
-     * read bytes with the function read() or readFile().
+     * Method that fills the remaining bytes of a buffer from the volume.
+     * The channel is read at an explicit position, so concurrent reads
+     * neither share a file pointer nor wait for one another.
+     * @param start is the byte offset within the volume.
+     * @param destination is the buffer receiving the bytes.
      */
-    public long position()
+    public void readInto(long start, ByteBuffer destination)
     {
-        return position;
+        Ext2Events.BlockRead event = new Ext2Events.BlockRead();
+        event.begin();
+
+        try
+        {
+            long position = start;
+
+            while(destination.hasRemaining())
+            {
+                int read = volume.read(destination, position);
+
+                volumeReads.increment();
+                if(read < 0)
+                    throw new EOFException("Read past the end of the volume at " + position);
+                bytesRead.add(read);
+                position += read;
+            }
+
+            recordRead(event, start, position - start, false, false);
+        }
+        catch(IOException ioe)
+        {
+            System.out.println(ioe);
+        }
+    }
+
+    /**
+     * Method that commits the flight recorder event of a read, if it is
+     * recorded; otherwise the event is never filled in.
+     */
+    private static void recordRead(Ext2Events.BlockRead event, long start, long size, boolean cacheHit, boolean mapped)
+    {
+        if(event.shouldCommit())
+        {
+            event.offset = start;
+            event.length = size;
+            event.cacheHit = cacheHit;
+            event.mapped = mapped;
+            event.commit();
+        }
     }
-    
-}
\ No newline at end of file
+}
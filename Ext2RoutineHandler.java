@@ -1,304 +1,468 @@
 import java.nio.*;
+import java.nio.channels.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Ext2RoutineHandler
 {
     public static void runRoutine()
     {
-        String file = Ext2Reader.getFileSystem();
-        Volume v = new Volume(file);
-        Ext2Reader ext2File = new Ext2Reader(v);
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+        String file = Ext2Reader.getFileSystem(input);
 
-        /* Extract Superblock and the file-image details */
-        SuperBlock superblock = new SuperBlock(ext2File.read(superblockOffset, blockSize));
-        superblock.extractDetails();
-        /* Extract and read the group descriptor */
-        GroupDescriptor gDescriptor = new GroupDescriptor(ext2File.read(groupDescriptorOffset,blockSize),superblock.getGroupNumber());
+        if(file == null)
+            return;
 
-        commandLineService(gDescriptor,ext2File,superblock);
+        try
+        {
+            runRoutine(file, input, true);
+        }
+        catch(IOException ioe)
+        {
+            System.out.println("Something went wrong while attempting to read "+ file+ " \n" + ioe);
+        }
+    }
 
-    }  
+    /**
+     * Method that mounts an image and runs the commands read from input.
+     * Without interaction neither the details of the superblock nor any
+     * prompt is printed, every command gets its arguments from its own
+     * line, and the output is buffered and only flushed when the buffer
+     * fills, before a cat, and at the end.
+     * @param file is the name of (or the path to) the image.
+     * @param input is where the commands are read from.
+     * @param interactive is true if the commands are typed at a console.
+     * @throws IOException if the image cannot be opened; nothing has been
+     * printed by the commands then.
+     */
+    public static void runRoutine(String file,BufferedReader input,boolean interactive) throws IOException
+    {
+        //a script prints nothing but the output of its commands
+        Ext2Volume volume = Ext2Volume.mount(file, mappedVolume, interactive);
+        PrintStream console = System.out;
+
+        if(!interactive)
+            System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), outputBufferSize), false));
+
+        try
+        {
+            Ext2Metrics.register();
+            commandLineService(volume, input, interactive);
+        }
+        catch(IOException ioe)
+        {
+            System.out.println(ioe);
+        }
+        finally
+        {
+            System.out.flush();
+            System.setOut(console);
+        }
+    }
 
     /**
      * Method to print the contents of the iNode tables.
-     * @param g is the group descriptor for the specified
-     * iNode table.
-     * @param ext2File is the file from which the program reads
-     * content.
-     * @param sb is the superblock containing deatils about the superblock.
+     * @param volume is the mounted volume the commands read from.
      */
-    public static void commandLineService(GroupDescriptor g,Ext2Reader ext2File,SuperBlock sb)
+    public static void commandLineService(Ext2Volume volume) throws IOException
     {
+        commandLineService(volume, new BufferedReader(new InputStreamReader(System.in)), true);
+    }
+
+    /**
+     * Method that runs the commands read from input against a volume.
+     * A command and its arguments are written on one line, such as
+     * cat a/b or dump 4096 512; at a console, the arguments that are
+     * left out are asked for. Lines starting with # are skipped.
+     * @param volume is the mounted volume the commands read from.
+     * @param input is where the commands are read from; the commands
+     * stop at its end, as they do with exit.
+     * @param interactive is true if prompts should be printed.
+     */
+    public static void commandLineService(Ext2Volume volume,BufferedReader input,boolean interactive) throws IOException
+    {
+        GroupDescriptor g = volume.getGroupDescriptor();
+        Ext2Reader ext2File = volume.getReader();
+        SuperBlock sb = volume.getSuperBlock();
         boolean running = true;
-        int[] pointers = g.getPointers();
-        System.out.println("~~~~~~~~~~~~~~ROOT INODE~~~~~~~~~~~~~~~~~");
 
-            INode iNode = new INode(ext2File.read(blockOffset * pointers[0] + sb.getiNodeSize(),blockSize));
-           
-            iNode.extractDetails();
+        INode iNode = FileInfo.getINode(iNode_rootOffset,ext2File,sb,g);
+
+        if(interactive)
+        {
+            System.out.println("~~~~~~~~~~~~~~ROOT INODE~~~~~~~~~~~~~~~~~");
 
             System.out.println(iNode.getPermissions()+" "+ iNode.getHardLinks() +" "+ iNode.getUserID()+" "+ iNode.getGroupID()
             +" "+ iNode.getSize() +" "+ iNode.getDate());
 
-        System.out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
-        System.out.println();
-        System.out.println();
-        FileInfo f = new FileInfo();
-        f.divideBlocks(iNode,iNode.isFile(),ext2File,sb,g);        
-        LinkedList<Directory> dir = f.getDirectories();
+            System.out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
+            System.out.println();
+            System.out.println();
+        }
+        FileInfo f = FileInfo.divideBlocks(iNode_rootOffset,iNode,ext2File,sb,g);
+        PathResolver resolver = volume.getResolver();
         
         Stack<String> path = new Stack<String>();
 
         while(running)
         {   
-            System.out.print("\nuser:$ ");
-            System.out.print(path.toString()
-                            .replaceAll("\\[", "")
-                            .replaceAll("]", "")
-                            .replaceAll(",","")
-                            .replaceAll(" ","")
-                            );
-            
-            Scanner s = new Scanner(System.in);
-            String command = s.nextLine();
-
-            if(command.equals("cat"))
+            if(interactive)
+            {
+                System.out.print("\nuser:$ ");
+                System.out.print(pathOf(path));
+            }
+
+            String line = input.readLine();
+
+            if(line == null)
+                break;
+
+            String[] words = line.trim().split("\\s+");
+            String command = words[0];
+
+            if(command.isEmpty() || command.startsWith("#"))
+                continue;
+
+            Ext2Events.CommandExecuted executed = new Ext2Events.CommandExecuted();
+            executed.begin();
+
+            try
             {
-                Scanner s2 = new Scanner(System.in);
-                String file = s2.nextLine();
-                for( Directory i : dir)
+                if(command.equals("cat"))
                 {
-                    String name = i.getName();
-                    if(name.equals(file))
+                    String file = argument(words, 1, null, input, interactive);
+                    long begin = System.nanoTime();
+                    Directory i = findEntry(f,resolver,file);
+
+                    if(i != null)
                     {
                         if( i.getINode().isFile() == true)
                         {
-                            f.readFileContent(i.getINode(),ext2File,sb,g);
-                            f.CAT();
+                            FileInfo.CAT(i.getINode(),ext2File);
                         }
                         else
                         {
-                            System.out.println(name + " is not a file.");
+                            System.out.println(file + " is not a file.");
                         }
                     }
-                    
-                }  
-            }
-            if(command.equals("exit"))
-            {
-                System.out.println("Program terminated by user.");
-                running = false;
-            }
-            if(command.equals("ls"))
-            {
-                for(Directory i : dir)
-                {
-                    System.out.print (i.getDetails());
+                    Ext2Metrics.record(command, begin);
                 }
-            }
-            if(command.equals("dump"))
-            {
-                System.out.println("Type starting byte:");
-                Scanner s3 = new Scanner(System.in);
-                long start = 
-                Long.parseLong(s3.nextLine());
+                else if(command.equals("export"))
+                {
+                    String file = argument(words, 1, "Type the name of the file:", input, interactive);
+                    String destination = argument(words, 2, "Type the path of the destination:", input, interactive);
 
-                System.out.println("Type length of sequence:");
-                Scanner s4 = new Scanner(System.in);
-                long length = Long.parseLong(s4.nextLine());
+                    Directory i = findEntry(f,resolver,file);
 
-                try
-                {
-                    dumpHexBytes(ext2File.read(start,length));
+                    if(i != null)
+                    {
+                        if(i.getINode().isFile())
+                        {
+                            try
+                            {
+                                long bytes = FileExporter.export(i.getINode(),ext2File,destination);
+                                System.out.println(bytes + " bytes written to " + destination);
+                            }
+                            catch(IOException ioe)
+                            {
+                                System.out.println("Something went wrong while attempting to write "+ destination + " \n" + ioe);
+                            }
+                        }
+                        else
+                        {
+                            System.out.println(file + " is not a file.");
+                        }
+                    }
                 }
-                catch(Exception e)
+                else if(command.equals("du"))
                 {
-                    e .printStackTrace();
+                    Directory current = f.getEntry(".");
+                    final ConcurrentSkipListMap<String, Long> totals = new ConcurrentSkipListMap<>();
+                    String prefix = pathOf(path);
+
+                    TreeWalker walker = new TreeWalker(ext2File,sb,g);
+                    long total = walker.walk(current.getINodeNumber(),current.getINode(),prefix,new TreeWalker.Visitor()
+                    {
+                        public void entry(String entryPath, String name, int iNodeNumber, INode node)
+                        {}
+
+                        public void directory(String directoryPath, long size)
+                        {
+                            totals.put(directoryPath, size);
+                        }
+                    });
+
+                    for(Map.Entry<String, Long> i : totals.entrySet())
+                        System.out.println(i.getValue() + "\t" + (i.getKey().isEmpty() ? "." : i.getKey()));
+                    System.out.println(total + "\ttotal");
                 }
-            }
-            if(command.equals("read"))
-            {
-                System.out.println("Type the name of the file:");
-                Scanner s3 = new Scanner(System.in);
-                String fileName = s3.nextLine();
+                else if(command.equals("find"))
+                {
+                    //the conditions are the rest of the line; a script without any lists every entry
+                    String expression;
+                    if(words.length > 1)
+                        expression = line.trim().substring(command.length()).trim();
+                    else if(interactive)
+                        expression = argument(words, 1, "Type the conditions (-name GLOB -type f|d|l -size [+|-]BYTES -mtime [+|-]DAYS):", input, interactive);
+                    else
+                        expression = "";
+
+                    final FindFilter filter = new FindFilter(expression);
+                    final ConcurrentSkipListSet<String> found = new ConcurrentSkipListSet<>();
+                    Directory current = f.getEntry(".");
+
+                    TreeWalker walker = new TreeWalker(ext2File,sb,g);
+                    walker.walk(current.getINodeNumber(),current.getINode(),pathOf(path),(entryPath, name, iNodeNumber, node) ->
+                    {
+                        if(filter.matches(name, node))
+                            found.add(entryPath);
+                    });
 
-                for(Directory i : dir)
+                    for(String i : found)
+                        System.out.println(i);
+                }
+                else if(command.equals("df"))
                 {
-                    if(fileName.equals(i.getName()))
+                    long begin = System.nanoTime();
+                    BitmapScanner.Usage usage = volume.getUsage();
+                    long elapsed = (System.nanoTime() - begin) / 1000000;
+
+                    System.out.println("          total        used        free   use%");
+                    System.out.printf("blocks %11d %11d %11d %5d%%%n", usage.totalBlocks, usage.getUsedBlocks(), usage.freeBlocks,
+                                      usage.totalBlocks == 0 ? 0 : usage.getUsedBlocks() * 100 / usage.totalBlocks);
+                    System.out.printf("inodes %11d %11d %11d %5d%%%n", usage.totalINodes, usage.getUsedINodes(), usage.freeINodes,
+                                      usage.totalINodes == 0 ? 0 : usage.getUsedINodes() * 100 / usage.totalINodes);
+
+                    System.out.println();
+                    System.out.println(usage.freeExtents + " free extents, the largest of " + usage.largestFreeExtent + " blocks");
+                    System.out.println("   extent size      extents       blocks");
+                    for(int k = 0; k < usage.freeExtentCounts.length; ++k)
                     {
-                        System.out.println("You are currently referencing this file: " + i.getName());
-                         System.out.println(i.getDetails());
+                        if(usage.freeExtentCounts[k] != 0)
+                            System.out.printf("%6d-%-7d %12d %12d%n", 1L << k, (2L << k) - 1, usage.freeExtentCounts[k], usage.freeExtentBlocks[k]);
                     }
+                    System.out.println("Scanned " + sb.getGroupNumber() + " groups in " + elapsed + " ms");
+                }
+                else if(command.equals("exit"))
+                {
+                    if(interactive)
+                        System.out.println("Program terminated by user.");
+                    running = false;
+                }
+                else if(command.equals("ls"))
+                {
+                    long begin = System.nanoTime();
+                    f.printListing(System.out);
+                    Ext2Metrics.record(command, begin);
+                }
+                else if(command.equals("stats"))
+                {
+                    Ext2Metrics.print(System.out);
+                }
+                else if(command.equals("dump"))
+                {
+                    long start = Long.parseLong(argument(words, 1, "Type starting byte:", input, interactive));
+                    long length = Long.parseLong(argument(words, 2, "Type length of sequence:", input, interactive));
+                    long begin = System.nanoTime();
+
+                    //the range is streamed in chunks, never held in memory at once
+                    new HexDumper(Channels.newChannel(System.out)).dump(ext2File, start, length);
+                    System.out.flush();
+                    Ext2Metrics.record(command, begin);
                 }
-                System.out.println("Type the starting byte of sequence:");
-                Scanner s4 = new Scanner(System.in);
-                long start = Long.parseLong(s3.nextLine());
+                else if(command.equals("read"))
+                {
+                    String fileName = argument(words, 1, "Type the name of the file:", input, interactive);
 
-                System.out.println("Type the end byte of sequence:");
-                Scanner s5 = new Scanner(System.in);
-                long end = Long.parseLong(s5.nextLine());
+                    Directory file = findEntry(f,resolver,fileName);
 
-                for(Directory i : dir)
-                {
-                    if(fileName.equals(i.getName()))
+                    if(file != null && interactive)
                     {
-                        byte[] conversion = ext2File.readFromFile(i,start,end);
-                        dumpFileINFO(conversion, i.getINode(),ext2File,(int)start,(int)end);
-                        break;
+                        System.out.println("You are currently referencing this file: " + file.getName());
+                        System.out.println(file.getDetails());
                     }
-                }
-            }
-            if(command.equals("cd"))
-            {
-                Scanner s5 = new Scanner(System.in);
-                String directory = s5.nextLine();
+                    long start = Long.parseLong(argument(words, 2, "Type the starting byte of sequence:", input, interactive));
+                    long end = Long.parseLong(argument(words, 3, "Type the end byte of sequence:", input, interactive));
+                    long begin = System.nanoTime();
 
-                for(Directory i : dir)
+                    if(file != null)
+                        dumpFileINFO(file.getINode(),ext2File,start,end);
+                    Ext2Metrics.record(command, begin);
+                }
+                else if(command.equals("cd"))
                 {
-                    if(directory.equals(".."))
-                    {
-                        if(path.peek() != null)
-                        {
-                            path.pop();
-
-                            for(Directory j : dir)
-                                if("..".equals(j.getName()))
-                                {
-                                    f.divideBlocks(j.getINode(),j.getINode().isFile(),ext2File,sb,g);
-                                    break;
-                                }   
-                            
-                            break; 
-                        }
-                    }
-                    else if(directory.equals(i.getName()))
+                    String directory = argument(words, 1, null, input, interactive);
+                    long begin = System.nanoTime();
+
+                    Directory i = findEntry(f,resolver,directory);
+
+                    if(i != null)
                     {
-                        if(i.getINode().isFile())
+                        if(!i.getINode().isDirectory())
                         {
                             System.out.println(directory + " is not a directory.");
-                            break;
                         }
                         else
                         {
-                            path.push(directory+ "/");
-                            f.divideBlocks(i.getINode(),i.getINode().isFile(),ext2File,sb,g);
-                            break;
-                        }              
+                            changePath(path, directory);
+                            f = FileInfo.divideBlocks(i.getINodeNumber(),i.getINode(),ext2File,sb,g);
+                        }
                     }
+                    Ext2Metrics.record(command, begin);
+                }
+                else
+                {
+                    System.out.println("Unknown command " + command + ".");
                 }
             }
+            catch(IllegalArgumentException iae)
+            {
+                //a malformed number or condition only loses its own command
+                System.out.println(command + ": " + iae.getMessage());
+            }
+            catch(EOFException eofe)
+            {
+                running = false;
+            }
+
+            if(executed.shouldCommit())
+            {
+                executed.command = command;
+                executed.commit();
+            }
         }
     }
 
     /**
-     * Method that is used for debugging hex code.
-     * The method is converting bytes to hex and then to stirng.
-     * @param bytes is an array of bytes that the algorithm uses 
-     * in order to perfom the conversions.
+     * Method that retrieves an argument of a command, from the line of the
+     * command or, at a console, from a line of its own.
+     * @param words holds the words of the command line.
+     * @param index is the position of the argument in words.
+     * @param prompt is printed before asking for the argument, if not null.
+     * @param input is where the commands are read from.
+     * @param interactive is true if missing arguments may be asked for.
+     * @return the argument.
      */
-    public static void dumpHexBytes(byte[] bytes) throws IOException
+    private static String argument(String[] words,int index,String prompt,BufferedReader input,boolean interactive) throws IOException
     {
-        System.out.println("~~~~~~~~~~~~~~~DUMPING HEX~~~~~~~~~~~~~~~~");
-        int alignerHEX = 16;
-        int reminderHEX = 0;
+        if(index < words.length)
+            return words[index];
 
-        StringBuilder stringBuilderHEX = new StringBuilder();
+        if(!interactive)
+            throw new IllegalArgumentException("missing argument " + index + ".");
 
-        for(int i = 0; i < bytes.length; ++i) 
-        {
-            alignerHEX -= 1;
-            
-            if(alignerHEX != 0)
-            {
-                stringBuilderHEX.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
-                stringBuilderHEX.append(" ");
-            }
-            else
-            {
-                stringBuilderHEX.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
-                stringBuilderHEX.append("\n");
-                alignerHEX = 16;
-            }
-        }
-        if(bytes.length % 16 != 0)
+        if(prompt != null)
+            System.out.println(prompt);
+
+        String line = input.readLine();
+
+        if(line == null)
+            throw new EOFException("No more input");
+
+        return line.trim();
+    }
+
+    /**
+     * Method that finds an entry from a path, relative to the current
+     * directory unless it starts with /.
+     * @param f holds the current directory.
+     * @param resolver resolves the path through the dentry cache.
+     * @param entryPath is the path of the entry.
+     * @return the entry, or null if the path leads nowhere.
+     */
+    private static Directory findEntry(FileInfo f,PathResolver resolver,String entryPath)
+    {
+        int number = resolver.resolve(entryPath, f.getEntry(".").getINodeNumber());
+
+        if(number == 0)
         {
-            do 
-            {
-                ++reminderHEX;
-            }while((bytes.length + reminderHEX) %16 != 0);
-           
-            while(reminderHEX -- != 0)
-            {
-              stringBuilderHEX.append("XX ");
-            }
+            System.out.println(entryPath + " does not exist.");
+            return null;
         }
-        System.out.println(stringBuilderHEX.toString());
 
-        System.out.println("~~~~~~~~~~~END OF DUMPED HEX~~~~~~~~~~~~~");
-        System.out.println("~~~~~~~~~~DUMPING HEX AS ASCII~~~~~~~~~~~");
+        String[] names = entryPath.split("/");
+        String name = names.length == 0 ? "/" : names[names.length - 1];
 
-        int alignerASCII = 16;
+        return f.getEntry(number, name);
+    }
 
-        StringBuilder stringBuilderASCII = new StringBuilder();
+    /**
+     * Method that updates the path printed by the prompt after a cd.
+     * @param path holds the names of the directories from the root
+     * to the current directory.
+     * @param directory is the path given to cd.
+     */
+    private static void changePath(Stack<String> path,String directory)
+    {
+        if(directory.startsWith("/"))
+            path.clear();
 
-        for(byte i : bytes)
+        for(String name : directory.split("/"))
         {
-            alignerASCII -= 1;
-            if(alignerASCII != 0)
+            if(name.isEmpty() || name.equals("."))
+                continue;
+
+            if(name.equals(".."))
             {
-                int convertor = i;
-                if(convertor != 0)
-                {
-                    stringBuilderASCII.append((char)convertor);
-                    stringBuilderASCII.append(" ");
-                }
-                else
-                {
-                    stringBuilderASCII.append(". ");
-                }
+                if(!path.isEmpty())
+                    path.pop();
             }
             else
-            {
-                int convertor = i;
-                if(convertor != 0)
-                {
-                    stringBuilderASCII.append((char)convertor);
-                    stringBuilderASCII.append("\n");
-                }
-                else
-                {
-                    stringBuilderASCII.append(".\n");
-                }
-                alignerASCII = 16;
-            }
+                path.push(name + "/");
         }
-        System.out.println(stringBuilderASCII.toString());
+    }
+
+    /**
+     * @return the path of the current directory as printed by the prompt.
+     */
+    private static String pathOf(Stack<String> path)
+    {
+        StringBuilder builder = new StringBuilder();
 
-        System.out.println("~~~~~~~END OF DUMPED HEX AS ASCII~~~~~~~~");
-        System.out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
+        for(String i : path)
+            builder.append(i);
 
-    }   
+        return builder.toString();
+    }
+
+    /**
+     * Method that is used for debugging hex code.
+     * The bytes are printed as lines of hex and ASCII by a HexDumper,
+     * with the offset of every line counted from the first byte.
+     * @param bytes is an array of bytes that the algorithm uses 
+     * in order to perfom the conversions.
+     */
+    public static void dumpHexBytes(byte[] bytes) throws IOException
+    {
+        new HexDumper(Channels.newChannel(System.out)).dump(bytes, 0, bytes.length, 0L);
+        System.out.flush();
+    }
 
-    public static void dumpFileINFO(byte[] data,INode node,Ext2Reader ext2,int start,int end)
+    /**
+     * Method that prints a range of the content of a file.
+     * The range is read through the block map of the file, so holes
+     * print as zeros and the data after them stays at its offset.
+     * Every byte read is printed, so zeros and whitespace at either end
+     * of the range are kept.
+     * @param node is the inode of the file.
+     * @param ext2 is the filesystem the program reads from.
+     * @param start is the first byte of the range.
+     * @param end is the byte after the last one of the range.
+     */
+    public static void dumpFileINFO(INode node,Ext2Reader ext2,long start,long end)
     {
         StringBuilder contentFile = new StringBuilder();
-        int[] copy = node.getPointers();
-                    
-        for(int m = 0; m < copy.length; ++m)
-        {
-                        
-            if(copy[m] != 0)
-            {
-                ext2.seek(copy[m] * Ext2RoutineHandler.blockSize + start);
-                byte[] c = ext2.readFile(end-start);
-                
-                for(int n = 0; n < c.length; ++n)
-                    contentFile.append((char)c[n]);
-            }
-        }
-        System.out.println(contentFile.toString().trim());
+        ByteBuffer c = ByteBuffer.allocate((int) Math.max(0, Math.min(end, node.getSize()) - start));
+
+        FileInfo.readFile(node, ext2, start, c);
+        c.flip();
+
+        while(c.hasRemaining())
+            contentFile.append((char)c.get());
+
+        System.out.println(contentFile);
     }
 
 
@@ -330,16 +494,16 @@ public class Ext2RoutineHandler
 
     /*  SUPERBLOCK OFFSETS AND VALUES */
      static final short magicNumber =(short) 0xef53; //magic number in any ext2 file system
-     static final int blockSize = 1024;    // every block's capacity within the volume
-     static final int blockOffset = 1024;  //the superblock starts at byte 1024
-     static final int superblockOffset = 1024; 
-     static final int groupDescriptor = 2048;
+     static final int minimumBlockSize = 1024; // block size of s_log_block_size 0; real sizes come from the superblock
+     static final int superblockSize = 1024; // the superblock is 1024 bytes whatever the block size
+     static final int superblockOffset = 1024; //the superblock starts at byte 1024
      static final int magicNumberOffset = 56;
      static final int iNodeCounter = 0;
      static final int groupsNumber = 3; 
      static final int blockCounter = 4;
      static final int iNodePointers = 15;
      static final int fileSystemNameSize = 16;
+     static final int firstDataBlockOffset = 20;
      static final int fileSystemBlockSizeOffset = 24;
      static final int blocksInGroup = 32;
      static final int iNodesInGroup = 40;
@@ -347,9 +511,13 @@ public class Ext2RoutineHandler
      static final int fileSystemOffset = 120;
      
      /* GROUP DESCRIPTOR OFFSETS AND VALUES  */
-     static final int groupDescriptorOffset = 2048;
      static final int groupDescriptorSize = 32;
+     static final int blockBitmapOffset = 0;
+     static final int iNodeBitmapOffset = 4;
      static final int iNodeTableOffset = 8;
+     static final int freeBlocksOffset = 12;
+     static final int freeINodesOffset = 14;
+     static final int usedDirectoriesOffset = 16;
 
          /* INODE OFFSETS AND VALUES  */
       static final int iNodePointerSize = 15;
@@ -366,6 +534,46 @@ public class Ext2RoutineHandler
       static final int iNode_lowerBitsOffset = 4;
       static final int iNode_rootOffset = 2;
           
+            /* VOLUME BACKEND */
+      static final boolean mappedVolume = Boolean.getBoolean("ext2.mapped"); // -Dext2.mapped=true maps the image in memory
+      static final long windowSize = 1L << 30;      // bytes mapped by every window of the image
+      static final long windowOverlap = 1L << 20;   // bytes each window shares with the next one
+      static final long blockCacheSize = Long.getLong("ext2.cache", 8L << 20); // bytes of blocks kept by Ext2Reader
+      static final int iNodeCacheSize = Integer.getInteger("ext2.inodes", 4096); // decoded inodes kept by Ext2Reader
+      static final int iNodeBatchBlocks = 64;       // most inode-table blocks decoded by a single read
+      static final int iNodeBatchEntries = 256;     // directory entries whose inodes are prefetched together
+      static final int dentryCacheSize = 16384;     // (parent, name) lookups kept by PathResolver
+      static final int directoryIndexCacheSize = 64; // directory name indexes kept by PathResolver
+      static final int streamBufferSize = 64 * 1024; // bytes copied at once when streaming a file
+      static final int maxRunBlocks = 256;          // most blocks of a run read by a single read
+      static final int blockMapCacheSize = 64;      // block maps of files read at an offset kept by Ext2Volume
+      static final long readAheadMax = Long.getLong("ext2.readahead", 4L << 20); // largest window read ahead, 0 disables it
+      static final int walkParallelism = Integer.getInteger("ext2.walkers", Runtime.getRuntime().availableProcessors()); // threads walking the tree for du and find
+      static final int indirectParallelism = Integer.getInteger("ext2.parallelism", Runtime.getRuntime().availableProcessors()); // threads resolving indirect trees, 1 resolves them serially
+      static final int bitmapParallelism = Integer.getInteger("ext2.scanners", Runtime.getRuntime().availableProcessors()); // threads scanning the bitmaps for df
+      static final int bitmapGroupsPerTask = 16;    // groups scanned by a single task before it splits
+      static final String[] timedCommands = {"ls", "cd", "cat", "read", "dump"}; // commands whose latencies stats shows
+      static final String metricsObjectName = "ext2:type=Metrics"; // JMX name of the metrics
+      static final int outputBufferSize = 64 * 1024; // bytes of output buffered when running a script
+      static final int hexChunkSize = 64 * 1024;     // bytes read and encoded at once by HexDumper, a multiple of 16
+
+            /*IMAGE GENERATOR */
+      static final int generatorINodeSize = 128;    // inode size of the images written by Ext2ImageWriter
+      static final int generatorFirstINode = 11;    // first non-reserved inode, lost+found in generated images
+      static final int generatorMaxGap = 64;        // most free blocks left by a single fragmentation gap
+      static final int generatorFreeBlocksOffset = 12;
+      static final int generatorFreeINodesOffset = 16;
+      static final int generatorWriteTimeOffset = 48;
+      static final int generatorLastCheckOffset = 64;
+      static final int generatorRevisionOffset = 76;
+      static final int generatorFeaturesOffset = 92;
+      static final int generatorSectorsOffset = 28; // i_blocks of an inode, counted in 512-byte sectors
+      static final int generatorFiletypeFeature = 0x0002;    // incompatible feature: file types in directory entries
+      static final int generatorSparseSuperFeature = 0x0001; // read-only feature: superblock backups in a few groups
+      static final int generatorLargeFileFeature = 0x0002;   // read-only feature: files of 2 GiB and more
+      static final byte generatorTypeFile = 1;      // directory entry type of a regular file
+      static final byte generatorTypeDirectory = 2; // directory entry type of a directory
+
             /*GENERIC VALUES */
       static final int byte_Value = 4;
       static final int directoryNameOffset = 6;
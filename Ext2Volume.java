@@ -0,0 +1,249 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Class to represent a mounted ext2 volume that can be shared between threads.
+ * The volume holds no mutable state of its own but its caches: the superblock
+ * and the group descriptor are read once when it is mounted, every read names
+ * its own position within the image, the caches are synchronized, and every
+ * listing, stream or read returns an object owned by the caller.
+ * The block maps of the files read or searched at an offset are kept, so
+ * positional reads and seeks do not walk the indirect blocks of a file
+ * again on every call.
+ * @author Vlad Diaconu
+ */
+public final class Ext2Volume
+{
+    private final Ext2Reader ext2;
+    private final SuperBlock superblock;
+    private final GroupDescriptor groupDescriptor;
+    private final PathResolver resolver;
+    private final LinkedHashMap<Integer, BlockMap> blockMaps;
+
+    /**
+     * Method that allows the construction of a mounted volume.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor of the volume.
+     */
+    public Ext2Volume(Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        this.ext2 = ext2;
+        this.superblock = superblock;
+        this.groupDescriptor = groupDescriptor;
+        this.resolver = new PathResolver(ext2, superblock, groupDescriptor);
+        this.blockMaps = new LinkedHashMap<Integer, BlockMap>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BlockMap> eldest)
+            {
+                return size() > Ext2RoutineHandler.blockMapCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Method that opens an image and reads its superblock and group descriptor.
+     * @param file is the name of (or the path to) the image.
+     * @param mapped is true if the image should be read through
+     * memory-mapped windows.
+     * @return the mounted volume.
+     * @throws IOException if the image cannot be opened.
+     */
+    public static Ext2Volume mount(String file,boolean mapped) throws IOException
+    {
+        return mount(file, mapped, true);
+    }
+
+    /**
+     * Method that opens an image and reads its superblock and group descriptor,
+     * optionally without printing the details of the superblock.
+     * @param file is the name of (or the path to) the image.
+     * @param mapped is true if the image should be read through
+     * memory-mapped windows.
+     * @param verbose is true if the read and the details of the superblock
+     * are printed on the command line.
+     * @return the mounted volume.
+     * @throws IOException if the image cannot be opened.
+     */
+    public static Ext2Volume mount(String file,boolean mapped,boolean verbose) throws IOException
+    {
+        Volume image = new Volume(file, mapped, verbose);
+
+        /* Extract Superblock and the file-image details */
+        SuperBlock superblock = new SuperBlock(image.read(Ext2RoutineHandler.superblockOffset, Ext2RoutineHandler.superblockSize));
+        superblock.extractDetails(verbose);
+
+        int blockSize = superblock.getBlockSize();
+        Ext2Reader ext2 = new Ext2Reader(image, blockSize);
+
+        /* Extract and read the group descriptor table, in the block after the superblock */
+        long tableStart = (long)(superblock.getFirstDataBlock() + 1) * blockSize;
+        int tableSize = superblock.getGroupNumber() * Ext2RoutineHandler.groupDescriptorSize;
+        GroupDescriptor groupDescriptor = new GroupDescriptor(ext2.read(tableStart, tableSize), superblock.getGroupNumber());
+
+        return new Ext2Volume(ext2, superblock, groupDescriptor);
+    }
+
+    /**
+     * @return the reader of the image.
+     */
+    public Ext2Reader getReader()
+    {
+        return ext2;
+    }
+
+    /**
+     * @return the superblock of the volume.
+     */
+    public SuperBlock getSuperBlock()
+    {
+        return superblock;
+    }
+
+    /**
+     * @return the group descriptor of the volume.
+     */
+    public GroupDescriptor getGroupDescriptor()
+    {
+        return groupDescriptor;
+    }
+
+    /**
+     * @return the resolver of paths shared by every user of the volume.
+     */
+    public PathResolver getResolver()
+    {
+        return resolver;
+    }
+
+    /**
+     * Method that resolves a path from the root directory.
+     * @param path is the path to resolve.
+     * @return the inode number the path leads to, or 0 if it leads nowhere.
+     */
+    public int resolve(String path)
+    {
+        return resolver.resolve(path, Ext2RoutineHandler.iNode_rootOffset);
+    }
+
+    /**
+     * Method that retrieves a decoded inode of the volume.
+     * @param iNodeNumber is the number of the inode.
+     * @return the decoded inode.
+     */
+    public INode getINode(int iNodeNumber)
+    {
+        return FileInfo.getINode(iNodeNumber, ext2, superblock, groupDescriptor);
+    }
+
+    /**
+     * Method that retrieves the block map of an inode, building it only
+     * if it is not kept already. The volume is only read, so a map never
+     * goes stale.
+     * @param iNodeNumber is the number of the inode.
+     * @param node is the decoded inode.
+     * @return the block map of the inode.
+     */
+    public BlockMap getBlockMap(int iNodeNumber,INode node)
+    {
+        synchronized(blockMaps)
+        {
+            BlockMap map = blockMaps.get(iNodeNumber);
+
+            if(map != null)
+                return map;
+        }
+
+        //built outside the lock, so a large map does not hold up the other readers
+        BlockMap map = BlockMap.build(node, ext2);
+
+        synchronized(blockMaps)
+        {
+            blockMaps.put(iNodeNumber, map);
+        }
+
+        return map;
+    }
+
+    /**
+     * Method that loads a directory of the volume.
+     * @param iNodeNumber is the number of the inode of the directory.
+     * @return the loaded directory, owned by the caller.
+     */
+    public FileInfo list(int iNodeNumber)
+    {
+        INode node = getINode(iNodeNumber);
+
+        if(!node.isDirectory())
+            throw new IllegalArgumentException("Inode " + iNodeNumber + " is not a directory");
+
+        return FileInfo.divideBlocks(iNodeNumber, node, ext2, superblock, groupDescriptor);
+    }
+
+    /**
+     * Method that counts the used and free blocks and inodes of the volume
+     * from its bitmaps, together with the sizes of its free extents.
+     * @return the usage of the volume.
+     */
+    public BitmapScanner.Usage getUsage()
+    {
+        return BitmapScanner.scan(ext2, superblock, groupDescriptor);
+    }
+
+    /**
+     * Method that opens the data of an inode as a stream.
+     * @param iNodeNumber is the number of the inode.
+     * @return a stream over the content of the file, owned by the caller.
+     */
+    public INodeInputStream open(int iNodeNumber)
+    {
+        return FileInfo.openFile(getINode(iNodeNumber), ext2);
+    }
+
+    /**
+     * Method that reads the data of a file at a given offset, without
+     * any stream or position shared with other readers.
+     * Holes of sparse files read as zeros.
+     * @param iNodeNumber is the number of the inode of the file.
+     * @param offset is the byte offset within the file.
+     * @param destination is the buffer receiving the bytes.
+     * @return the number of bytes read, or -1 if offset is at or past the
+     * end of the file.
+     */
+    public int read(int iNodeNumber,long offset,ByteBuffer destination)
+    {
+        INode node = getINode(iNodeNumber);
+
+        return FileInfo.readFile(node, getBlockMap(iNodeNumber, node), ext2, offset, destination);
+    }
+
+    /**
+     * Method that finds the next offset of a file holding data, like
+     * lseek with SEEK_DATA.
+     * @param iNodeNumber is the number of the inode of the file.
+     * @param offset is the byte offset to start from.
+     * @return the offset of the data, or -1 if there is no data at or after offset.
+     */
+    public long seekData(int iNodeNumber,long offset)
+    {
+        INode node = getINode(iNodeNumber);
+
+        return getBlockMap(iNodeNumber, node).nextData(offset, ext2.getBlockSize(), node.getSize());
+    }
+
+    /**
+     * Method that finds the next offset of a file within a hole, like
+     * lseek with SEEK_HOLE. The end of the file counts as a hole.
+     * @param iNodeNumber is the number of the inode of the file.
+     * @param offset is the byte offset to start from.
+     * @return the offset of the hole, or -1 if offset is past the end of the file.
+     */
+    public long seekHole(int iNodeNumber,long offset)
+    {
+        INode node = getINode(iNodeNumber);
+
+        return getBlockMap(iNodeNumber, node).nextHole(offset, ext2.getBlockSize(), node.getSize());
+    }
+}
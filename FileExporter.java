@@ -0,0 +1,144 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Class that copies the content of a file out of the volume without
+ * moving it through the heap.
+ * Every run of the file's block map is handed to FileChannel.transferTo,
+ * which lets the operating system copy the data straight from the image to
+ * the destination.
+ * Holes are never read: they are written as zeros to streams, and are
+ * skipped over when exporting to a file, which stays sparse, so the time
+ * an export takes follows the allocated data rather than the size.
+ * @author Vlad Diaconu
+ */
+public class FileExporter
+{
+    /**
+     * Method that transfers the content of a file to a channel.
+     * @param node is the inode of the file.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param destination is the channel receiving the content.
+     * @return the number of bytes written.
+     */
+    public static long transfer(INode node,Ext2Reader ext2,WritableByteChannel destination) throws IOException
+    {
+        return transfer(node, ext2, destination, false);
+    }
+
+    /**
+     * Method that transfers the content of a file to a channel.
+     * @param node is the inode of the file.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param destination is the channel receiving the content.
+     * @param sparse is true if the holes are skipped by moving the position
+     * of destination, which must then be a file channel, instead of being
+     * written as zeros.
+     * @return the number of bytes written.
+     */
+    private static long transfer(INode node,Ext2Reader ext2,WritableByteChannel destination,boolean sparse) throws IOException
+    {
+        BlockMap map = BlockMap.build(node, ext2);
+        long size = node.getSize();
+        long written = 0L;
+
+        for(int run = 0; run < map.getRunCount() && written < size; ++run)
+        {
+            long start = map.getLogicalStart(run) * ext2.getBlockSize();
+
+            //the logical blocks before the run are a hole
+            if(start > written)
+            {
+                skipHole(destination, Math.min(start, size) - written, sparse);
+                written = Math.min(start, size);
+            }
+
+            long bytes = Math.min((long) map.getLength(run) * ext2.getBlockSize(), size - written);
+
+            transferRun(ext2.getChannel(), map.getPhysicalStart(run) * ext2.getBlockSize(), bytes, destination);
+            written += bytes;
+        }
+
+        if(written < size)
+        {
+            skipHole(destination, size - written, sparse);
+
+            //a file ending with a hole still needs its last byte for its length to be right
+            if(sparse)
+            {
+                FileChannel file = (FileChannel) destination;
+                file.position(file.position() - 1);
+                writeZeros(destination, 1);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Method that exports a file to a file of the host system.
+     * @param node is the inode of the file.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param path is the path of the host file, which is overwritten.
+     * @return the number of bytes written.
+     */
+    public static long export(INode node,Ext2Reader ext2,String path) throws IOException
+    {
+        try(FileChannel destination = new FileOutputStream(path).getChannel())
+        {
+            return transfer(node, ext2, destination, true);
+        }
+    }
+
+    /**
+     * Method that copies a range of the volume until all of it was transferred,
+     * since transferTo may copy fewer bytes than asked for.
+     */
+    private static void transferRun(FileChannel source,long position,long count,WritableByteChannel destination) throws IOException
+    {
+        while(count > 0)
+        {
+            long transferred = source.transferTo(position, count, destination);
+
+            if(transferred <= 0)
+                throw new EOFException("Could not read past byte " + position + " of the volume");
+
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    /**
+     * Method that moves past a hole of the file, either by moving the
+     * position of the destination or by writing zeros.
+     */
+    private static void skipHole(WritableByteChannel destination,long count,boolean sparse) throws IOException
+    {
+        if(sparse)
+        {
+            FileChannel file = (FileChannel) destination;
+            file.position(file.position() + count);
+        }
+        else
+        {
+            writeZeros(destination, count);
+        }
+    }
+
+    /**
+     * Method that writes the zeros of an unallocated range of the file.
+     */
+    private static void writeZeros(WritableByteChannel destination,long count) throws IOException
+    {
+        ByteBuffer zeros = ByteBuffer.allocate(Ext2RoutineHandler.streamBufferSize);
+
+        while(count > 0)
+        {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), count));
+
+            count -= destination.write(zeros);
+        }
+    }
+}
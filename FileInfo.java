@@ -1,294 +1,322 @@
 import java.nio.*;
+import java.nio.channels.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
- * Class that manages the different levels of indirection of inode pointers of blocks,
- * the directories and their offsets and the reading of files.
+ * Class that manages the loading of directories through the block maps of their
+ * inodes and their name indexes, the directories and their offsets and the
+ * reading of files.
+ * Every loaded directory is an object of its own, so several threads can
+ * load and list directories of the same volume at once.
  * @author Vlad Diaconu
  */
 public class FileInfo
 {
     
-    private static StringBuilder directoryInformation = new StringBuilder();
-    private static LinkedList<Directory> directories = new LinkedList<>();
-    private static StringBuilder contentFile = new StringBuilder();
+    private final DirectoryIndex index;
+    private final Ext2Reader volume;
+    private final SuperBlock superblock;
+    private final GroupDescriptor groupDescriptor;
+    private static final FileChannel standardOutput = new FileOutputStream(FileDescriptor.out).getChannel();
 
-    public FileInfo()
-    {}
+    /** count the directories parsed and their entries, shown by Ext2Metrics */
+    static final LongAdder directoryParses = new LongAdder();
+    static final LongAdder directoryEntries = new LongAdder();
 
     /**
-     * Method that separates the first 12 direct pointers to data from the other 3 levels of indirection.
-     * @param node is the inode of the block the method uses.
+     * Method that allows the construction of a loaded directory.
+     * @param index is the hash index of the entries of the directory.
      * @param ext2 is the ext2 image the program reads from.
      * @param superblock is the superblock of the system.
      * @param groupDescriptor is the group descriptor of the block.
      */
-    public static void divideBlocks(INode node,boolean isFile,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    private FileInfo(DirectoryIndex index,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
     {
-        directories.clear();
-
-        //get the pointers from the nodes
-        int[] blockPointers = node.getPointers();
-        
-
-        for(int i = 0; i < 12; ++i)
-        {
-            //iterate and get data from the first 12 blocks that point to some data
-            if(blockPointers[i] != 0)
-            {
-                extractDirectData(blockPointers[i],isFile,ext2,superblock,groupDescriptor);
-            }
-        }     
-            //perform indirection
-            if(blockPointers[12] != 0) extractIndirectData1(blockPointers[12],isFile,ext2,superblock,groupDescriptor);
-            
-            //perform double indirection
-            if(blockPointers[13] != 0) extractIndirectData2(blockPointers[13],isFile,ext2,superblock,groupDescriptor);
-           
-            //perform triple indirection
-            if(blockPointers[14] != 0) extractIndirectData3(blockPointers[14],isFile,ext2,superblock,groupDescriptor);    
+        this.index = index;
+        this.volume = ext2;
+        this.superblock = superblock;
+        this.groupDescriptor = groupDescriptor;
     }
 
     /**
-     * Method that iterates through the first indirect pointers to data.
-     * @param blockOffset is the offset at which this level of indirection
-     * contains pointers to data.
+     * Method that loads the directory the inode describes.
+     * Only the hash index of the entries' names is built; the inodes of the
+     * entries are decoded when an entry is looked up or when the whole
+     * listing is asked for.
+     * @param iNodeNumber is the number of the inode of the directory.
+     * @param node is the inode of the block the method uses.
      * @param ext2 is the ext2 image the program reads from.
      * @param superblock is the superblock of the system.
      * @param groupDescriptor is the group descriptor of the block.
+     * @return the loaded directory.
      */
-    private static void extractIndirectData1(int blockOffset,boolean isFile,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    public static FileInfo divideBlocks(int iNodeNumber,INode node,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
     {
-        
-        ext2.seek(blockOffset * Ext2RoutineHandler.blockSize);
-        byte[] indirectData = ext2.readFile(superblock.getiNodeSize());
-        
-        ByteBuffer b = ByteBuffer.wrap(indirectData);
-        b.order(ByteOrder.LITTLE_ENDIAN);
-
-        if(isFile == false)
-        {
-            for(int i = 0; i < b.limit(); i += Ext2RoutineHandler.byte_Value)
-            {
-                if(b.getInt(i) != 0)
-                {
-                    extractDirectData(b.getInt(i),isFile,ext2,superblock,groupDescriptor);
-                }
-            }
-        }
-        else
-        {
-            readFileContent(new INode(indirectData),ext2,superblock,groupDescriptor);
-        }
+        return new FileInfo(parseDirectory(iNodeNumber, node, ext2), ext2, superblock, groupDescriptor);
     }
 
     /**
-     * Method that iterates through the second indirect pointers to data.
-     * @param blockOffset is the offset at which this level of indirection
-     * contains pointers to other pointers.
+     * Method that parses the entries of a directory into its name index.
+     * Every directory the program reads is parsed here, so that the
+     * parses and their entries are counted and recorded.
+     * @param iNodeNumber is the number of the inode of the directory.
+     * @param node is the decoded inode of the directory.
      * @param ext2 is the ext2 image the program reads from.
-     * @param superblock is the superblock of the system.
-     * @param groupDescriptor is the group descriptor of the block.
-     * NOTE: This method calls to the above one until the direct reading
-     * is possible.
+     * @return the index of the directory.
      */
-    private static void extractIndirectData2(int blockOffset,boolean isFile,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    public static DirectoryIndex parseDirectory(int iNodeNumber,INode node,Ext2Reader ext2)
     {
+        Ext2Events.DirectoryParse event = new Ext2Events.DirectoryParse();
+        event.begin();
+
+        DirectoryIndex index = DirectoryIndex.build(node, ext2);
 
-        ext2.seek(blockOffset * Ext2RoutineHandler.blockSize);
-        byte[] indirectData = ext2.readFile(superblock.getiNodeSize());
-        ByteBuffer b = ByteBuffer.wrap(indirectData);
-        b.order(ByteOrder.LITTLE_ENDIAN);
+        directoryParses.increment();
+        directoryEntries.add(index.size());
 
-        for(int i = 0; i < b.limit(); i += Ext2RoutineHandler.byte_Value)
+        if(event.shouldCommit())
         {
-            if(b.getInt(i) != 0)
-            {     
-                extractIndirectData1(b.getInt(i),isFile,ext2,superblock,groupDescriptor);
-            }
+            event.iNodeNumber = iNodeNumber;
+            event.entries = index.size();
+            event.commit();
         }
+
+        return index;
     }
 
     /**
-     * Method that iterates through the third indirect pointers to data.
-     * @param blockOffset is the offset at which this level of indirection
-     * contains pointers to other pointers.
-     * @param ext2 is the ext2 image the program reads from.
-     * @param superblock is the superblock of the system.
-     * @param groupDescriptor is the group descriptor of the block.
-     * NOTE: This method calls to the above one until the direct reading
-     * is possible.
+     * Method that finds an entry of the loaded directory by its name.
+     * Only the inode of that entry is decoded.
+     * @param name is the name of the entry.
+     * @return the entry or null if the directory has no such entry.
      */
-    private static void extractIndirectData3(int blockOffset,boolean isFile,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    public Directory getEntry(String name)
     {
+        int entry = index.find(name);
 
-        ext2.seek(blockOffset * Ext2RoutineHandler.blockSize);
-        byte[] indirectData = ext2.readFile(superblock.getiNodeSize());
-        ByteBuffer b = ByteBuffer.wrap(indirectData);
-        b.order(ByteOrder.LITTLE_ENDIAN);
+        if(entry < 0)
+            return null;
 
-        for(int i = 0; i < b.limit(); i += Ext2RoutineHandler.byte_Value)
-        {
-            if(b.getInt(i) != 0)
-            {
-                extractIndirectData2(b.getInt(i),isFile,ext2,superblock,groupDescriptor);
-            }
-        }
+        return createEntry(entry);
+    }
+
+    /**
+     * @return the hash index of the loaded directory.
+     */
+    public DirectoryIndex getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Method that builds the entry found at a position of the index.
+     * @param entry is the position of the entry within the index.
+     * @return the entry.
+     */
+    private Directory createEntry(int entry)
+    {
+        return getEntry(index.getINodeNumber(entry), index.getName(entry));
+    }
+
+    /**
+     * Method that builds an entry of the volume.
+     * @param iNodeNumber is the number of the inode of the entry.
+     * @param name is the name of the entry.
+     * @return the entry.
+     */
+    public Directory getEntry(int iNodeNumber,String name)
+    {
+        INode node = getINode(iNodeNumber,volume,superblock,groupDescriptor);
+
+        return new Directory(
+                                node,
+                                name,
+                                INodeTable.locate(iNodeNumber,superblock,groupDescriptor),
+                                iNodeNumber
+                             );
     }
 
     /**
-     * Method that iterates through the inodes of the directory we are
-     * currently search for.
-     * @param blockOffset is the offset at which data has been found.
+     * Method that retrieves a decoded inode, reading and decoding it
+     * only if the volume's inode cache does not hold it already.
+     * @param iNodeNumber is the number of the inode.
      * @param ext2 is the ext2 image the program reads from.
      * @param superblock is the superblock of the system.
      * @param groupDescriptor is the group descriptor of the block.
+     * @return the decoded inode.
      */
-    private static void extractDirectData(int blockOffset,boolean isFile,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    public static INode getINode(int iNodeNumber,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
     {
-            /* Load the current directory details. */
-        ext2.seek(blockOffset * Ext2RoutineHandler.blockSize);
-        byte[] data = ext2.readFile(Ext2RoutineHandler.blockSize);
-       
-        ByteBuffer b = ByteBuffer.wrap(data);
-        b.order(ByteOrder.LITTLE_ENDIAN);
+        INodeCache cache = ext2.getINodeCache();
+        INode node = cache.get(iNodeNumber);
+
+        if(node == null)
+        {
+            Ext2Events.INodeDecode event = new Ext2Events.INodeDecode();
+            event.begin();
 
-        short directorySize;
+            long currentBlock = INodeTable.locate(iNodeNumber,superblock,groupDescriptor);
 
-                    /* Display the details of subdirectories/files. */
-            for(int i = 0; i < b.limit(); i += directorySize)
-            {
-                
-                int iNodeOffset = b.getInt(i);
-                
-                int currentBlock = getCurrentINodeBlock(iNodeOffset,superblock,groupDescriptor);
-               
-                ext2.seek(currentBlock);
-                byte[] data2 = ext2.readFile(Ext2RoutineHandler.blockSize);
-                
-                INode node = new INode(data2);
-                node.extractDetails();
-
-                //use the size of each directory as an iterator
-                directorySize = b.getShort(i + Ext2RoutineHandler.byte_Value);
-
-                byte directoryNameSize = b.get(i + Ext2RoutineHandler.directoryNameOffset);
-
-                byte[] directoryName = new byte[directoryNameSize];
-                
-                //convert the name of the directory to a string byte by byte
-                for(int j = 0 ; j < directoryName.length; ++j)
-                {
-                    directoryName[j] = b.get(i + j + (Ext2RoutineHandler.byte_Value * 2));
-                }
-
-                directoryInformation.append(
-                                node.getPermissions() + "   " +
-                                node.getHardLinks()   + "   " +
-                                node.getUserID()      + "   " +
-                                node.getGroupID()     + "   " +
-                                node.getSize()        + "   " +
-                                node.getDate()        + "   " +
-                                new String(directoryName).trim()
-                                );
-                directoryInformation.append("\n");
-
-                Directory dir = new Directory(
-                                                data2, 
-                                                new String(directoryName).trim(),
-                                                directoryInformation.toString(),
-                                                currentBlock,
-                                                node.getPointers()
-                                             );
-                                            
-                directories.add(dir);
-                directoryInformation.setLength(0);
+            ByteBuffer data = ext2.readBlock(currentBlock / ext2.getBlockSize());
+            node = new INode(data, (int)(currentBlock % ext2.getBlockSize())).copy(superblock.getiNodeSize());
+
+            cache.put(iNodeNumber, node);
 
+            if(event.shouldCommit())
+            {
+                event.iNodeNumber = iNodeNumber;
+                event.count = 1;
+                event.commit();
             }
+        }
+
+        return node;
     }
 
     /**
-     * Method to determine the block within which an inode
-     * resides.
-     * All calculations and formulas applied in this method
-     * are references to this article.
-     * https://wiki.osdev.org/Ext2#Inode_Type_and_Permissions
+     * Method that prints the details of every entry of the directory,
+     * as ls does. The entries are formatted straight from the index and
+     * their inodes, without building a Directory for each of them.
+     * @param out is the stream the listing is printed to.
      */
-    private static int getCurrentINodeBlock(int iNodeOffset, SuperBlock superblock,GroupDescriptor groupDescriptor)
+    public void printListing(PrintStream out)
     {
-        int total = superblock.getiNodeNumber();
+        int[] iNodeNumbers = new int[Ext2RoutineHandler.iNodeBatchEntries];
 
-        //if the inode is between the root and the total number of inodes in the filesystem.
-        if(iNodeOffset >= 2 && iNodeOffset < total)
+        for(int first = 0; first < index.size(); first += iNodeNumbers.length)
         {
-            int iNodesInGroup = superblock.getiNodesInGroup();
-            int iNodeSize = superblock.getiNodeSize();
-            int[] pointers = groupDescriptor.getPointers();
-            int iNodeTablePointer;
+            int count = prefetch(first, iNodeNumbers);
 
-            double currentBlock;
-            
-            //make the block offset start from 0 not from 1 as with inodes.
-            iNodeOffset--;
-            iNodeTablePointer = pointers[iNodeOffset / iNodesInGroup];
+            for(int i = 0; i < count; ++i)
+            {
+                INode node = getINode(iNodeNumbers[i],volume,superblock,groupDescriptor);
+                out.print(Directory.formatDetails(node, index.getName(first + i)));
+            }
+        }
+    }
 
-            //generate the block within data resides in.
-            currentBlock = ((((double) iNodeOffset % iNodesInGroup) * iNodeSize / Ext2RoutineHandler.blockSize) + iNodeTablePointer) * Ext2RoutineHandler.blockSize;
+    /**
+     * Method that decodes the inodes of a batch of entries of the index
+     * with as few reads as possible.
+     * @param first is the position of the first entry of the batch.
+     * @param iNodeNumbers receives the inode numbers of the batch.
+     * @return the number of entries in the batch.
+     */
+    private int prefetch(int first,int[] iNodeNumbers)
+    {
+        int count = Math.min(iNodeNumbers.length, index.size() - first);
 
-                return (int) currentBlock;
-        }
+        for(int i = 0; i < count; ++i)
+            iNodeNumbers[i] = index.getINodeNumber(first + i);
+        INodeTable.prefetch(iNodeNumbers,count,volume,superblock,groupDescriptor);
 
-        return 0;
+        return count;
     }
 
     /**
-     * Method that returns a list of all subdirectories from within
-     * a directory.
-     * @param directories is a list containing all the files/subdirectories
-     * of a directory.
+     * Method that reads the data of a file at a given offset.
+     * Holes of sparse files read as zeros without touching the volume.
+     * @param node is the inode that points to this file.
+     * @param ext2 is the filesystem the program reads from.
+     * @param offset is the byte offset within the file.
+     * @param destination is the buffer receiving the bytes.
+     * @return the number of bytes read, or -1 if offset is at or past the
+     * end of the file.
      */
-    public static LinkedList<Directory> getDirectories()
+    public static int readFile(INode node,Ext2Reader ext2,long offset,ByteBuffer destination)
     {
-        return directories;
+        return readFile(node, BlockMap.build(node, ext2), ext2, offset, destination);
     }
 
     /**
-     * Method that allows the conversion of bytes to readable
-     * human ASCII code if a readable file is found.
+     * Method that reads the data of a file at a given offset through a
+     * block map that was already built, so that a file read at many
+     * offsets walks its indirect blocks once.
      * @param node is the inode that points to this file.
+     * @param map is the block map of the inode.
      * @param ext2 is the filesystem the program reads from.
+     * @param offset is the byte offset within the file.
+     * @param destination is the buffer receiving the bytes.
+     * @return the number of bytes read, or -1 if offset is at or past the
+     * end of the file.
      */
-    public static void readFileContent(INode node,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    public static int readFile(INode node,BlockMap map,Ext2Reader ext2,long offset,ByteBuffer destination)
     {
-        node.extractDetails();
+        if(offset >= node.getSize())
+            return -1;
 
-        int[] copy = node.getPointers();
-                    
-        for(int m = 0; m < 12; ++m)
-        {    
-            if(copy[m] != 0)
+        int blockSize = ext2.getBlockSize();
+        int total = (int) Math.min(destination.remaining(), node.getSize() - offset);
+        int done = 0;
+
+        while(done < total)
+        {
+            long position = offset + done;
+            long logical = position / blockSize;
+            int within = (int)(position % blockSize);
+            int run = map.findRun(logical);
+            int size;
+
+            if(run >= 0)
             {
-                ext2.seek(copy[m] * Ext2RoutineHandler.blockSize);
-                byte[] c = ext2.readFile(Ext2RoutineHandler.blockSize);
-                
-                for(int n = 0; n < c.length; ++n)
-                    contentFile.append((char)c[n]);
+                long remaining = (map.getLogicalStart(run) + map.getLength(run) - logical) * blockSize - within;
+                size = (int) Math.min(total - done, remaining);
+
+                ByteBuffer part = destination.slice(destination.position(), size);
+                ext2.readInto((map.getPhysicalStart(run) + logical - map.getLogicalStart(run)) * blockSize + within, part);
             }
+            else
+            {
+                long hole = map.nextData(position, blockSize, node.getSize());
+                size = (int) Math.min(total - done, hole < 0 ? Long.MAX_VALUE : hole - position);
+
+                for(int i = 0; i < size; ++i)
+                    destination.put(destination.position() + i, (byte) 0);
+            }
+
+            destination.position(destination.position() + size);
+            done += size;
         }
-        if(copy[12] != 0)
-        extractIndirectData1(copy[12],true,ext2,superblock,groupDescriptor);
-        if(copy[13] != 0) 
-        extractIndirectData2(copy[13],true,ext2,superblock,groupDescriptor);
-        if(copy[14] != 0) 
-        extractIndirectData3(copy[14],true,ext2,superblock,groupDescriptor);
+
+        return total;
+    }
+
+    /**
+     * Method that opens the data of an inode as a stream.
+     * The blocks are read lazily through a fixed-size buffer.
+     * @param node is the inode that points to this file.
+     * @param ext2 is the filesystem the program reads from.
+     * @return a stream over the content of the file.
+     */
+    public static INodeInputStream openFile(INode node,Ext2Reader ext2)
+    {
+        return new INodeInputStream(node, ext2);
     }
 
-    public static void CAT()
+    /**
+     * Method that prints the content of a file on the command line.
+     * The content is transferred from the volume straight to the
+     * standard output, so it never goes through the heap and bytes
+     * are written unchanged.
+     * @param node is the inode that points to this file.
+     * @param ext2 is the filesystem the program reads from.
+     */
+    public static void CAT(INode node,Ext2Reader ext2)
     {
+        System.out.flush();
+
+        try
+        {
+            FileExporter.transfer(node, ext2, standardOutput);
+        }
+        catch(IOException ioe)
+        {
+            System.out.println(ioe);
+        }
 
-        System.out.println(contentFile.toString());
-        contentFile.setLength(0);
+        System.out.println();
     }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Class to represent the conditions an entry must meet to be printed by
+ * the find command.
+ * The conditions are written like the ones of the find utility:
+ * -name GLOB, -type f|d|l, -size [+|-]BYTES and -mtime [+|-]DAYS.
+ * A + asks for more than the value, a - for less than it.
+ * @author Vlad Diaconu
+ */
+public class FindFilter
+{
+    private PathMatcher name;
+    private int type = -1;
+    private long size;
+    private int sizeComparison = 2;
+    private long modified;
+    private int modifiedComparison = 2;
+
+    /**
+     * Method that allows the construction of a filter from an expression.
+     * @param expression contains the conditions, separated by spaces.
+     * An empty expression matches every entry.
+     */
+    public FindFilter(String expression)
+    {
+        String[] words = expression.trim().split("\\s+");
+
+        for(int i = 0; i + 1 < words.length; i += 2)
+        {
+            String value = words[i + 1];
+
+            if(words[i].equals("-name"))
+                name = FileSystems.getDefault().getPathMatcher("glob:" + value);
+            else if(words[i].equals("-type"))
+                type = parseType(value);
+            else if(words[i].equals("-size"))
+            {
+                sizeComparison = comparison(value);
+                size = Long.parseLong(value.replaceFirst("^[+-]", ""));
+            }
+            else if(words[i].equals("-mtime"))
+            {
+                modifiedComparison = comparison(value);
+                modified = Long.parseLong(value.replaceFirst("^[+-]", ""));
+            }
+            else
+                throw new IllegalArgumentException("Unknown condition " + words[i]);
+        }
+
+        if(words.length % 2 != 0 && !words[0].isEmpty())
+            throw new IllegalArgumentException("Missing value for " + words[words.length - 1]);
+    }
+
+    /**
+     * Method that checks if an entry meets every condition.
+     * @param entryName is the name of the entry.
+     * @param node is the decoded inode of the entry.
+     * @return true if the entry matches.
+     */
+    public boolean matches(String entryName,INode node)
+    {
+        if(name != null && !name.matches(Paths.get(entryName)))
+            return false;
+        if(type != -1 && node.getFileType() != type)
+            return false;
+        if(sizeComparison != 2 && !compare(node.getSize(), size, sizeComparison))
+            return false;
+        if(modifiedComparison != 2)
+        {
+            long days = (System.currentTimeMillis() - node.getDate().getTime()) / (24L * 60 * 60 * 1000);
+
+            if(!compare(days, modified, modifiedComparison))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return 1 for a value starting with +, -1 for a value starting
+     * with - and 0 otherwise.
+     */
+    private static int comparison(String value)
+    {
+        if(value.startsWith("+"))
+            return 1;
+        if(value.startsWith("-"))
+            return -1;
+        return 0;
+    }
+
+    /**
+     * @return true if actual is more than (1), less than (-1) or equal to (0) expected.
+     */
+    private static boolean compare(long actual,long expected,int comparison)
+    {
+        return Long.compare(actual, expected) == comparison;
+    }
+
+    /**
+     * @return the file type bits matching a type letter.
+     */
+    private static int parseType(String value)
+    {
+        if(value.equals("f"))
+            return Ext2RoutineHandler.IFREG;
+        if(value.equals("d"))
+            return Ext2RoutineHandler.IFDIR;
+        if(value.equals("l"))
+            return Ext2RoutineHandler.IFLNK;
+
+        throw new IllegalArgumentException("Unknown type " + value);
+    }
+}
@@ -1,36 +1,97 @@
 import java.nio.*;
 
 /**
- * Class to describe the group descriptor for a certain block.
+ * Class to describe the group descriptor table of the volume.
+ * The whole table is read at once and the fields of every group are
+ * kept in primitive arrays, one per field, so that volumes with
+ * thousands of groups cost one read and a handful of arrays to open.
+ * The detail of a single group is only built when it is asked for.
  * @author Vlad Diaconu
  */
 public class GroupDescriptor
 {
-    private ByteBuffer buffer;
+    private int groups;
+    private int[] blockBitmaps;
+    private int[] iNodeBitmaps;
     private int[] pointers;
+    private int[] freeBlocks;
+    private int[] freeINodes;
+    private int[] directories;
+
+    private Group[] details;
 
     /**
-     * Method that allows the construction of a group descriptor.
-     * @param content is the data within the group descriptor.
-     * @param group is the block containing the number of inode pointers within the
-     * group descriptor.
+     * Class to represent the detail of a single block group.
+     */
+    public static class Group
+    {
+        public final int number;
+        public final long firstBlock;
+        public final int blockCount;
+        public final int blockBitmap;
+        public final int iNodeBitmap;
+        public final int iNodeTable;
+        public final int freeBlocks;
+        public final int freeINodes;
+        public final int directories;
+
+        private Group(GroupDescriptor table, int number, SuperBlock superblock)
+        {
+            this.number = number;
+            this.firstBlock = superblock.getFirstDataBlock() + (long) number * superblock.getBlocksInGroup();
+            this.blockCount = (int) Math.min(superblock.getBlocksInGroup(), (superblock.getBlockNumber() & 0xffffffffL) - firstBlock);
+            this.blockBitmap = table.blockBitmaps[number];
+            this.iNodeBitmap = table.iNodeBitmaps[number];
+            this.iNodeTable = table.pointers[number];
+            this.freeBlocks = table.freeBlocks[number];
+            this.freeINodes = table.freeINodes[number];
+            this.directories = table.directories[number];
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Group " + number + ": blocks " + firstBlock + "-" + (firstBlock + blockCount - 1) +
+                   ", block bitmap at " + blockBitmap +
+                   ", inode bitmap at " + iNodeBitmap +
+                   ", inode table at " + iNodeTable +
+                   ", " + freeBlocks + " free blocks, " + freeINodes + " free inodes, " +
+                   directories + " directories";
+        }
+    }
+
+    /**
+     * Method that allows the construction of a group descriptor table.
+     * @param content is the data within the group descriptor table.
+     * @param group is the number of groups described by the table.
      */
     public GroupDescriptor(byte[] content, int group)
     {
-        buffer = ByteBuffer.wrap(content);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
 
         buffer.order(ByteOrder.LITTLE_ENDIAN);
-        
+
+        groups = group;
+        blockBitmaps = new int[group];
+        iNodeBitmaps = new int[group];
         pointers = new int[group];
+        freeBlocks = new int[group];
+        freeINodes = new int[group];
+        directories = new int[group];
 
         for(int i = 0; i < group ; ++i)
         {
-            pointers[i] = buffer.getInt((Ext2RoutineHandler.groupDescriptorSize * i) + Ext2RoutineHandler.iNodeTableOffset);
-             System.out.println(pointers[i]);
+            int start = Ext2RoutineHandler.groupDescriptorSize * i;
+
+            blockBitmaps[i] = buffer.getInt(start + Ext2RoutineHandler.blockBitmapOffset);
+            iNodeBitmaps[i] = buffer.getInt(start + Ext2RoutineHandler.iNodeBitmapOffset);
+            pointers[i] = buffer.getInt(start + Ext2RoutineHandler.iNodeTableOffset);
+            freeBlocks[i] = buffer.getShort(start + Ext2RoutineHandler.freeBlocksOffset) & 0xffff;
+            freeINodes[i] = buffer.getShort(start + Ext2RoutineHandler.freeINodesOffset) & 0xffff;
+            directories[i] = buffer.getShort(start + Ext2RoutineHandler.usedDirectoriesOffset) & 0xffff;
         }
-        
     }
-    
+
     /**
      * @return the inode table pointers.
      */
@@ -39,4 +100,83 @@ public class GroupDescriptor
         return pointers;
     }
 
+    /**
+     * @return the number of groups of the volume.
+     */
+    public int getGroupCount()
+    {
+        return groups;
+    }
+
+    /**
+     * @return the first block of the inode table of a group.
+     */
+    public int getINodeTable(int group)
+    {
+        return pointers[group];
+    }
+
+    /**
+     * @return the block holding the block bitmap of a group.
+     */
+    public int getBlockBitmap(int group)
+    {
+        return blockBitmaps[group];
+    }
+
+    /**
+     * @return the block holding the inode bitmap of a group.
+     */
+    public int getINodeBitmap(int group)
+    {
+        return iNodeBitmaps[group];
+    }
+
+    /**
+     * @return the number of free blocks of a group, as recorded by the table.
+     */
+    public int getFreeBlocks(int group)
+    {
+        return freeBlocks[group];
+    }
+
+    /**
+     * @return the number of free inodes of a group, as recorded by the table.
+     */
+    public int getFreeINodes(int group)
+    {
+        return freeINodes[group];
+    }
+
+    /**
+     * @return the number of directories of a group.
+     */
+    public int getDirectories(int group)
+    {
+        return directories[group];
+    }
+
+    /**
+     * Method that retrieves the detail of a group, building it the first
+     * time it is asked for.
+     * @param group is the number of the group.
+     * @param superblock is the superblock of the system.
+     * @return the detail of the group.
+     */
+    public Group getGroup(int group, SuperBlock superblock)
+    {
+        Group[] built = details;
+
+        if(built == null)
+        {
+            built = new Group[groups];
+            details = built;
+        }
+
+        //groups are immutable, so building one twice from two threads is harmless
+        if(built[group] == null)
+            built[group] = new Group(this, group, superblock);
+
+        return built[group];
+    }
 }
@@ -0,0 +1,171 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Class that dumps a range of bytes as lines of hex and ASCII, in the
+ * layout of hexdump -C: the offset of the line, sixteen bytes in hex in
+ * two groups of eight, and the same bytes as text between bars.
+ * The range is read in fixed chunks into one reusable array and every
+ * chunk is encoded through lookup tables into another reusable array,
+ * which is written to the channel at once, so a dump of any length runs
+ * in constant memory with one read and one write per chunk. The arrays
+ * are sized to the largest range dumped so far, at most a chunk, so
+ * dumping a single block does not cost the buffers of a whole chunk.
+ * @author Vlad Diaconu
+ */
+public class HexDumper
+{
+    /** the two hex digits of every byte value */
+    private static final byte[] HEX = new byte[512];
+    /** the character printed for every byte value, . if it is not printable */
+    private static final byte[] TEXT = new byte[256];
+
+    private static final int BYTES_PER_LINE = 16;
+    /** 16 offset digits and a space, every byte as a space and 2 digits, a space between the halves, 2 spaces, the text between bars and a newline */
+    private static final int LINE_LENGTH = 16 + 1 + BYTES_PER_LINE * 3 + 1 + 2 + 1 + BYTES_PER_LINE + 1 + 1;
+
+    static
+    {
+        byte[] digits = "0123456789abcdef".getBytes();
+
+        for(int i = 0; i < 256; ++i)
+        {
+            HEX[2 * i] = digits[i >>> 4];
+            HEX[2 * i + 1] = digits[i & 15];
+            TEXT[i] = (byte)(i >= 0x20 && i < 0x7f ? i : '.');
+        }
+    }
+
+    private final WritableByteChannel out;
+    private byte[] chunk = new byte[0];
+    private byte[] text = new byte[0];
+
+    /**
+     * Method that allows the construction of a dumper.
+     * @param out is the channel the lines are written to.
+     */
+    public HexDumper(WritableByteChannel out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Method that dumps a range of the volume.
+     * The range is cut short at the end of the volume.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param start is the byte offset of the range within the volume.
+     * @param length is the number of bytes of the range.
+     * @return the number of bytes dumped.
+     */
+    public long dump(Ext2Reader ext2,long start,long length) throws IOException
+    {
+        if(start < 0 || length < 0)
+            throw new IllegalArgumentException("The range must not be negative");
+
+        long end = Math.min(start + length, ext2.getChannel().size());
+        long position = start;
+
+        if(chunk.length < Math.min(Ext2RoutineHandler.hexChunkSize, end - start))
+            chunk = new byte[(int) Math.min(Ext2RoutineHandler.hexChunkSize, end - start)];
+
+        while(position < end)
+        {
+            int count = (int) Math.min(chunk.length, end - position);
+
+            ext2.readInto(position, chunk, 0, count);
+            write(chunk, 0, count, position);
+            position += count;
+        }
+
+        return Math.max(0L, end - start);
+    }
+
+    /**
+     * Method that dumps bytes that were already read.
+     * @param bytes holds the bytes.
+     * @param from is the index of the first byte to dump.
+     * @param count is the number of bytes to dump.
+     * @param address is the offset printed for the first byte.
+     */
+    public void dump(byte[] bytes,int from,int count,long address) throws IOException
+    {
+        for(int done = 0; done < count; done += Ext2RoutineHandler.hexChunkSize)
+        {
+            int part = Math.min(Ext2RoutineHandler.hexChunkSize, count - done);
+
+            write(bytes, from + done, part, address + done);
+        }
+    }
+
+    /**
+     * Method that encodes at most a chunk of bytes and writes the lines.
+     */
+    private void write(byte[] bytes,int from,int count,long address) throws IOException
+    {
+        int at = 0;
+        int size = (count + BYTES_PER_LINE - 1) / BYTES_PER_LINE * LINE_LENGTH;
+
+        if(text.length < size)
+            text = new byte[size];
+
+        for(int line = 0; line < count; line += BYTES_PER_LINE)
+            at = encodeLine(bytes, from + line, Math.min(BYTES_PER_LINE, count - line), address + line, at);
+
+        ByteBuffer lines = ByteBuffer.wrap(text, 0, at);
+
+        while(lines.hasRemaining())
+            out.write(lines);
+    }
+
+    /**
+     * Method that encodes a line into the text array.
+     * @param bytes holds the bytes.
+     * @param from is the index of the first byte of the line.
+     * @param count is the number of bytes of the line, 16 but for the last line.
+     * @param address is the offset printed for the line.
+     * @param at is the index of text the line starts at.
+     * @return the index of text after the line.
+     */
+    private int encodeLine(byte[] bytes,int from,int count,long address,int at)
+    {
+        for(int shift = 56; shift >= 0; shift -= 8)
+        {
+            int value = (int)(address >>> shift) & 0xff;
+            text[at++] = HEX[2 * value];
+            text[at++] = HEX[2 * value + 1];
+        }
+        text[at++] = ' ';
+
+        for(int i = 0; i < BYTES_PER_LINE; ++i)
+        {
+            //the halves of the line are set apart by one more space
+            if(i == BYTES_PER_LINE / 2)
+                text[at++] = ' ';
+
+            text[at++] = ' ';
+
+            if(i < count)
+            {
+                int value = bytes[from + i] & 0xff;
+                text[at++] = HEX[2 * value];
+                text[at++] = HEX[2 * value + 1];
+            }
+            else
+            {
+                text[at++] = ' ';
+                text[at++] = ' ';
+            }
+        }
+
+        text[at++] = ' ';
+        text[at++] = ' ';
+        text[at++] = '|';
+        for(int i = 0; i < count; ++i)
+            text[at++] = TEXT[bytes[from + i] & 0xff];
+        text[at++] = '|';
+        text[at++] = '\n';
+
+        return at;
+    }
+}
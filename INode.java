@@ -1,28 +1,24 @@
 import java.io.*;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Class to represent a inode within a filesystem.
+ * The inode is a view over the buffer it was read into, at the offset
+ * of its first byte: several inodes share the buffer of the inode-table
+ * block or run they were read from, and every field is decoded from the
+ * buffer when it is asked for. The permissions string is only built
+ * when it is printed.
  * @author Vlad Diaconu
  */
 public class INode
 {
-    private ByteBuffer buffer;
-    
-    private short type;
-    private short userID;
-    private int lastTimeModified;
-    private int lastTimeAccessed;
-    private int groupID;
-    private int sizeUpper;
-    private int sizeLower;
-    private long fileSize;
-    private int hardLinks;
-    private int[] blockPointers;
-
-    private boolean file;
-    private StringBuilder permissions;
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    /** counts the inodes decoded from a buffer, shown by Ext2Metrics */
+    static final LongAdder decodes = new LongAdder();
 
     /**
      * Method to create an inode.
@@ -30,104 +26,61 @@ public class INode
      */
     public INode(byte[] content)
     {
-        buffer = ByteBuffer.wrap(content);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        
-        blockPointers = new int[15];
+        this(ByteBuffer.wrap(content), 0);
     }
 
     /**
-     * Method to extract the contents of an iNode given specific offsets.
-     * The method also prints details about the iNode such as:
-     * @param type which is linked to the permissions section of the iNode.
-     * @param userID which is the id of the user.
-     * @param lastTimeAccessed is the time gone since the file was last accessed.
-     * @param lastTimeModified is the time gone since the file was last modified.
-     * @param groupID is the id of the group to which the file belongs to.
-     * @param hardLinks is the number of references of the file.
-     * @param blockPointer is the number of indirected references the iNode has.
+     * Method to create an inode over a buffer that was already read,
+     * such as a block of the inode table or a slice of a memory-mapped volume.
+     * The buffer is only read with absolute gets, so it can be shared
+     * by every inode it holds and by several threads.
+     * @param content is the buffer containing the inode.
+     * @param offset is the index of the first byte of the inode within content.
      */
-    public void extractDetails()
+    public INode(ByteBuffer content, int offset)
     {
-        permissions = new StringBuilder();
-
-        type = buffer.getShort(Ext2RoutineHandler.iNode_typeOffset);
-        userID = buffer.getShort(Ext2RoutineHandler.iNode_userIDOffset);
-        lastTimeAccessed = buffer.getInt(Ext2RoutineHandler.iNode_lastAccessOffset);
-        sizeUpper = buffer.getInt(Ext2RoutineHandler.iNode_upperBitsOffset);
-        sizeLower = buffer.getInt(Ext2RoutineHandler.iNode_lowerBitsOffset);
-        lastTimeModified = buffer.getInt(Ext2RoutineHandler.iNode_lastModificationOffset);
-        groupID = buffer.getShort(Ext2RoutineHandler.iNode_groupIDOffset);
-        hardLinks = buffer.getShort(Ext2RoutineHandler.iNode_hardLinksOffset);
+        //a duplicate is only needed to fix the byte order
+        if(content.order() == ByteOrder.LITTLE_ENDIAN)
+            buffer = content;
+        else
+            buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
 
-        fileSize = (long) (sizeUpper << 32 | sizeLower & 0xffffffl);
+        this.offset = offset;
+        decodes.increment();
+    }
 
-        for(int i = 0; i < blockPointers.length; ++i)
-        {
-            blockPointers[i] = buffer.getInt(4 * i + Ext2RoutineHandler.iNode_blockPointerOffset);
-        }
+    /**
+     * Method to create an inode over a record of its own, which is not
+     * counted as a decode.
+     * @param record is the little endian buffer holding only the inode.
+     */
+    private INode(ByteBuffer record)
+    {
+        buffer = record;
+        offset = 0;
+    }
 
-                        /* "TYPE" BLOCK OF PERMISSIONS */
-        if((int)(type & Ext2RoutineHandler.IFSCK) == Ext2RoutineHandler.IFSCK)
-            permissions.append("s");
-        else if((int)(type & Ext2RoutineHandler.IFLNK) == Ext2RoutineHandler.IFLNK)
-            permissions.append("l");
-        else if((int)(type & Ext2RoutineHandler.IFREG) == Ext2RoutineHandler.IFREG)
-           { permissions.append("-"); file = true;}
-        else if((int)(type & Ext2RoutineHandler.IFBLK) == Ext2RoutineHandler.IFBLK)
-            permissions.append("b");
-        else if((int)(type & Ext2RoutineHandler.IFDIR) == Ext2RoutineHandler.IFDIR)
-           { permissions.append("d"); file = false;}
-        else if((int)(type & Ext2RoutineHandler.IFCHR) == Ext2RoutineHandler.IFCHR)
-            permissions.append("c");
-        else if((int)(type & Ext2RoutineHandler.IFIFO) == Ext2RoutineHandler.IFIFO)
-            permissions.append("p");
-        
-                        /* "USER" BLOCK OF PERMISSIONS */
-        if((int)(type & Ext2RoutineHandler.IRUSR) == Ext2RoutineHandler.IRUSR)
-            permissions.append("r");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.IWUSR) == Ext2RoutineHandler.IWUSR)
-            permissions.append("w");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.IXUSR) == Ext2RoutineHandler.IXUSR)
-            permissions.append("x");
-        else
-            permissions.append("-");
+    /**
+     * Method that copies the record of the inode out of the buffer it
+     * shares with the other inodes of its block or run, so that keeping
+     * the inode does not keep the whole buffer.
+     * @param size is the size of an inode record.
+     * @return an inode over a copy of its record.
+     */
+    public INode copy(int size)
+    {
+        byte[] record = new byte[size];
+        buffer.get(offset, record);
 
-                        /* "GROUP" BLOCK OF PERMISSIONS */
-        if((int)(type & Ext2RoutineHandler.IRGRP) == Ext2RoutineHandler.IRGRP)
-            permissions.append("r");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.IWGRP) == Ext2RoutineHandler.IWGRP)
-            permissions.append("w");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.IXGRP) == Ext2RoutineHandler.IXGRP)
-            permissions.append("x");
-        else
-            permissions.append("-");
+        return new INode(ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN));
+    }
 
-                        /* "OTHER" BLOCK OF PERMISSIONS */
-        if((int)(type & Ext2RoutineHandler.IROTH) == Ext2RoutineHandler.IROTH)
-            permissions.append("r");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.IWOTH) == Ext2RoutineHandler.IWOTH)
-            permissions.append("w");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.IXOTH) == Ext2RoutineHandler.IXOTH)
-            permissions.append("x");
-        else
-            permissions.append("-");
-        if((int)(type & Ext2RoutineHandler.ISVTX) == Ext2RoutineHandler.ISVTX)
-            permissions.append("t");
-        else
-            permissions.append("");
+    /**
+     * @return the mode of the inode: its type and permission bits.
+     */
+    private int getMode()
+    {
+        return buffer.getShort(offset + Ext2RoutineHandler.iNode_typeOffset) & 0xffff;
     }
 
     /**
@@ -135,7 +88,7 @@ public class INode
      */
     public String getUserID()
     {
-        if(userID == 0)
+        if(buffer.getShort(offset + Ext2RoutineHandler.iNode_userIDOffset) == 0)
             return "root";
         else
             return "user";
@@ -146,7 +99,7 @@ public class INode
      */
     public String getGroupID()
     {
-        if(groupID == 0)
+        if(buffer.getShort(offset + Ext2RoutineHandler.iNode_groupIDOffset) == 0)
             return "root";
         else
             return "staff";
@@ -157,6 +110,42 @@ public class INode
      */
     public String getPermissions()
     {
+        int type = getMode();
+        StringBuilder permissions = new StringBuilder(11);
+
+                        /* "TYPE" BLOCK OF PERMISSIONS */
+        if((int)(type & Ext2RoutineHandler.IFSCK) == Ext2RoutineHandler.IFSCK)
+            permissions.append("s");
+        else if((int)(type & Ext2RoutineHandler.IFLNK) == Ext2RoutineHandler.IFLNK)
+            permissions.append("l");
+        else if((int)(type & Ext2RoutineHandler.IFREG) == Ext2RoutineHandler.IFREG)
+            permissions.append("-");
+        else if((int)(type & Ext2RoutineHandler.IFBLK) == Ext2RoutineHandler.IFBLK)
+            permissions.append("b");
+        else if((int)(type & Ext2RoutineHandler.IFDIR) == Ext2RoutineHandler.IFDIR)
+            permissions.append("d");
+        else if((int)(type & Ext2RoutineHandler.IFCHR) == Ext2RoutineHandler.IFCHR)
+            permissions.append("c");
+        else if((int)(type & Ext2RoutineHandler.IFIFO) == Ext2RoutineHandler.IFIFO)
+            permissions.append("p");
+
+                        /* "USER" BLOCK OF PERMISSIONS */
+        permissions.append((type & Ext2RoutineHandler.IRUSR) != 0 ? 'r' : '-');
+        permissions.append((type & Ext2RoutineHandler.IWUSR) != 0 ? 'w' : '-');
+        permissions.append((type & Ext2RoutineHandler.IXUSR) != 0 ? 'x' : '-');
+
+                        /* "GROUP" BLOCK OF PERMISSIONS */
+        permissions.append((type & Ext2RoutineHandler.IRGRP) != 0 ? 'r' : '-');
+        permissions.append((type & Ext2RoutineHandler.IWGRP) != 0 ? 'w' : '-');
+        permissions.append((type & Ext2RoutineHandler.IXGRP) != 0 ? 'x' : '-');
+
+                        /* "OTHER" BLOCK OF PERMISSIONS */
+        permissions.append((type & Ext2RoutineHandler.IROTH) != 0 ? 'r' : '-');
+        permissions.append((type & Ext2RoutineHandler.IWOTH) != 0 ? 'w' : '-');
+        permissions.append((type & Ext2RoutineHandler.IXOTH) != 0 ? 'x' : '-');
+        if((type & Ext2RoutineHandler.ISVTX) != 0)
+            permissions.append("t");
+
         return permissions.toString();
     }
 
@@ -166,7 +155,24 @@ public class INode
      */
     public boolean isFile()
     {
-       return file;
+       return getFileType() == Ext2RoutineHandler.IFREG;
+    }
+
+    /**
+     * @return true if the inode describes a directory.
+     */
+    public boolean isDirectory()
+    {
+        return getFileType() == Ext2RoutineHandler.IFDIR;
+    }
+
+    /**
+     * @return the file type bits of the inode's mode, one of
+     * the IF* values of Ext2RoutineHandler.
+     */
+    public int getFileType()
+    {
+        return getMode() & 0xF000;
     }
 
     /**
@@ -174,7 +180,13 @@ public class INode
      */
     public long getSize()
     {
-        return fileSize;
+        long sizeLower = buffer.getInt(offset + Ext2RoutineHandler.iNode_lowerBitsOffset) & 0xffffffffL;
+
+        //the upper 32 bits of the size are only meaningful for regular files
+        if(isFile())
+            return ((long) buffer.getInt(offset + Ext2RoutineHandler.iNode_upperBitsOffset) << 32) | sizeLower;
+
+        return sizeLower;
     }
 
     /**
@@ -183,7 +195,7 @@ public class INode
      */
     public int getHardLinks()
     {
-        return hardLinks;
+        return buffer.getShort(offset + Ext2RoutineHandler.iNode_hardLinksOffset);
     }
 
     /**
@@ -192,16 +204,29 @@ public class INode
      */
     public int[] getPointers()
     {
+        int[] blockPointers = new int[15];
+
+        for(int i = 0; i < blockPointers.length; ++i)
+            blockPointers[i] = getPointer(i);
+
         return blockPointers;
     }
 
+    /**
+     * Method that reads a single block pointer without copying the others.
+     * @param i is the index of the pointer, 0 to 14.
+     * @return the pointer.
+     */
+    public int getPointer(int i)
+    {
+        return buffer.getInt(offset + Ext2RoutineHandler.iNode_blockPointerOffset + 4 * i);
+    }
+
     /**
      * @return the date of when the file was last modified.
      */
     public Date getDate()
     {
-        return new Date((long)lastTimeModified * 1000);
+        return new Date((long) buffer.getInt(offset + Ext2RoutineHandler.iNode_lastModificationOffset) * 1000);
     }
-
-
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+import java.util.*;
+
+/**
+ * Class to represent a bounded cache of decoded inodes, keyed by their
+ * inode number.
+ * The cache belongs to the reader of a volume, so it lives exactly as long
+ * as the volume stays open; the least recently used inode is dropped once
+ * the capacity is reached.
+ * @author Vlad Diaconu
+ */
+public class INodeCache
+{
+    private LinkedHashMap<Integer, INode> nodes;
+
+    private long hits = 0L;
+    private long misses = 0L;
+
+    /**
+     * Method that allows the construction of an inode cache.
+     * @param capacity is the maximum number of decoded inodes kept.
+     */
+    public INodeCache(final int capacity)
+    {
+        nodes = new LinkedHashMap<Integer, INode>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, INode> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Method that retrieves a decoded inode.
+     * @param number is the number of the inode.
+     * @return the inode or null if it was not decoded recently.
+     */
+    public synchronized INode get(int number)
+    {
+        INode node = nodes.get(number);
+
+        if(node != null)
+            ++hits;
+        else
+            ++misses;
+
+        return node;
+    }
+
+    /**
+     * Method that checks if an inode is cached without counting
+     * the check as a hit or a miss.
+     * @param number is the number of the inode.
+     * @return true if the inode is cached.
+     */
+    public synchronized boolean contains(int number)
+    {
+        return nodes.containsKey(number);
+    }
+
+    /**
+     * Method that keeps a decoded inode for later lookups.
+     * @param number is the number of the inode.
+     * @param node is the inode.
+     */
+    public synchronized void put(int number, INode node)
+    {
+        nodes.put(number, node);
+    }
+
+    /**
+     * @return the number of inodes currently cached.
+     */
+    public synchronized int size()
+    {
+        return nodes.size();
+    }
+
+    /**
+     * @return the number of lookups served from the cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to decode the inode.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+}
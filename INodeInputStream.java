@@ -0,0 +1,171 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Class that streams the data of an inode.
+ * The blocks are located through the block map of the inode and every run
+ * of contiguous blocks is read with as few reads as the buffer allows.
+ * While the stream is read sequentially the following blocks are read
+ * ahead in the background, and the buffer never grows past
+ * Ext2RoutineHandler.readAheadMax bytes, so any file can be read in
+ * constant memory.
+ * Blocks that are not allocated (holes) are read as zeros.
+ * @author Vlad Diaconu
+ */
+public class INodeInputStream extends InputStream
+{
+    private Ext2Reader ext2;
+    private BlockMap map;
+    private ReadAhead readAhead;
+    private long size;
+
+    private long position = 0L;
+    private long mark = 0L;
+    private byte[] buffer = new byte[0];
+    private long bufferStart = 0L;
+    private int bufferLength = 0;
+
+    /**
+     * Method that allows the construction of a stream over an inode's data.
+     * @param node is the decoded inode of the file.
+     * @param ext2 is the ext2 image the program reads from.
+     */
+    public INodeInputStream(INode node, Ext2Reader ext2)
+    {
+        this.ext2 = ext2;
+        this.map = BlockMap.build(node, ext2);
+        this.readAhead = new ReadAhead(ext2, map);
+        this.size = node.getSize();
+    }
+
+    /**
+     * @return the next byte of the file or -1 at its end.
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if(position >= size)
+            return -1;
+
+        fill();
+
+        return buffer[(int)(position++ - bufferStart)] & 0xff;
+    }
+
+    /**
+     * Method that copies the following bytes of the file.
+     * @param b is the destination array.
+     * @param off is the first index written in b.
+     * @param len is the maximum number of bytes copied.
+     * @return the number of bytes copied or -1 at the end of the file.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if(len == 0)
+            return 0;
+        if(position >= size)
+            return -1;
+
+        int copied = 0;
+
+        while(copied < len && position < size)
+        {
+            fill();
+
+            int offset = (int)(position - bufferStart);
+            int count = (int) Math.min(Math.min(len - copied, bufferLength - offset), size - position);
+
+            System.arraycopy(buffer, offset, b, off + copied, count);
+
+            copied += count;
+            position += count;
+        }
+
+        return copied;
+    }
+
+    /**
+     * Method that moves forward in the file without reading the skipped blocks.
+     * @param n is the number of bytes to skip.
+     * @return the number of bytes skipped.
+     */
+    @Override
+    public long skip(long n)
+    {
+        long skipped = Math.max(0L, Math.min(n, size - position));
+        position += skipped;
+
+        return skipped;
+    }
+
+    /**
+     * @return the number of bytes left until the end of the file.
+     */
+    @Override
+    public int available()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit)
+    {
+        mark = position;
+    }
+
+    @Override
+    public void reset()
+    {
+        position = mark;
+    }
+
+    /**
+     * @return a channel reading the same data as this stream.
+     */
+    public ReadableByteChannel getChannel()
+    {
+        return Channels.newChannel(this);
+    }
+
+    /**
+     * @return the block map used to locate the data of the inode.
+     */
+    public BlockMap getBlockMap()
+    {
+        return map;
+    }
+
+    /**
+     * Method that stops reading ahead.
+     */
+    @Override
+    public void close()
+    {
+        readAhead.cancel();
+    }
+
+    /**
+     * Method that loads the blocks following the current position into the
+     * buffer, unless the position is already buffered.
+     */
+    private void fill()
+    {
+        if(position >= bufferStart && position < bufferStart + bufferLength)
+            return;
+
+        ReadAhead.Chunk chunk = readAhead.fetch(position / ext2.getBlockSize());
+
+        buffer = chunk.data;
+        bufferStart = chunk.firstBlock * ext2.getBlockSize();
+        bufferLength = chunk.blocks * ext2.getBlockSize();
+    }
+}
@@ -0,0 +1,143 @@
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Class that locates inodes within the inode tables of the block groups
+ * and decodes whole runs of inode-table blocks at once.
+ * All the offsets are computed with integer arithmetic, following
+ * https://wiki.osdev.org/Ext2#Determining_which_Block_Group_contains_an_Inode
+ * @author Vlad Diaconu
+ */
+public class INodeTable
+{
+    /**
+     * Method to determine the byte offset of an inode within the volume.
+     * @param iNodeNumber is the number of the inode, starting from 1.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor of the volume.
+     * @return the byte offset of the first byte of the inode, or 0 if
+     * the number does not refer to an inode of the filesystem.
+     */
+    public static long locate(int iNodeNumber,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        if(iNodeNumber < 1 || iNodeNumber > superblock.getiNodeNumber())
+            return 0L;
+
+        int index = iNodeNumber - 1;
+        int group = index / superblock.getiNodesInGroup();
+        long offsetInTable = (long)(index % superblock.getiNodesInGroup()) * superblock.getiNodeSize();
+
+        return (long) groupDescriptor.getINodeTable(group) * superblock.getBlockSize() + offsetInTable;
+    }
+
+    /**
+     * Method that reads a contiguous run of blocks of a group's inode table
+     * in a single read and decodes every inode stored in it.
+     * The inodes are views over the buffer of the run; they are not cached,
+     * as a run holds many more inodes than were asked for.
+     * @param group is the block group owning the inode table.
+     * @param firstBlock is the index of the first block within the inode table.
+     * @param count is the number of inode-table blocks to read.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor of the volume.
+     * @return the decoded inodes, in the order of their numbers.
+     */
+    public static INode[] readBlocks(int group,int firstBlock,int count,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        int iNodeSize = superblock.getiNodeSize();
+        int iNodesInGroup = superblock.getiNodesInGroup();
+        int perBlock = superblock.getBlockSize() / iNodeSize;
+
+        int firstIndex = firstBlock * perBlock;
+        int total = Math.min(count * perBlock, iNodesInGroup - firstIndex);
+
+        Ext2Events.INodeDecode event = new Ext2Events.INodeDecode();
+        event.begin();
+
+        long start = ((long) groupDescriptor.getINodeTable(group) + firstBlock) * superblock.getBlockSize();
+        ByteBuffer data = ext2.slice(start, total * iNodeSize);
+
+        INode[] nodes = new INode[total];
+
+        //every inode of the run is a view over the same buffer
+        for(int k = 0; k < total; ++k)
+            nodes[k] = new INode(data, k * iNodeSize);
+
+        if(event.shouldCommit())
+        {
+            event.iNodeNumber = group * iNodesInGroup + firstIndex + 1;
+            event.count = total;
+            event.commit();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Method that makes sure the given inodes are decoded and cached.
+     * The inode-table blocks holding inodes that are not cached yet are
+     * merged into contiguous runs, so every run costs a single sequential
+     * read instead of one read per inode. Only the inodes asked for are
+     * cached, each with a copy of its own record, so a prefetch neither
+     * evicts the inodes it warms nor keeps the buffers of its runs.
+     * @param iNodeNumbers contains the numbers of the inodes.
+     * @param count is the number of valid entries in iNodeNumbers.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor of the volume.
+     */
+    public static void prefetch(int[] iNodeNumbers,int count,Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        INodeCache cache = ext2.getINodeCache();
+        int iNodeSize = superblock.getiNodeSize();
+        int iNodesInGroup = superblock.getiNodesInGroup();
+        int perBlock = superblock.getBlockSize() / iNodeSize;
+
+        int[] numbers = new int[count];
+        int missing = 0;
+
+        for(int i = 0; i < count; ++i)
+        {
+            int number = iNodeNumbers[i];
+
+            if(number < 1 || number > superblock.getiNodeNumber() || cache.contains(number))
+                continue;
+
+            numbers[missing++] = number;
+        }
+
+        //sorting the numbers keeps each group's blocks together and in order
+        Arrays.sort(numbers, 0, missing);
+
+        int i = 0;
+        while(i < missing)
+        {
+            int group = (numbers[i] - 1) / iNodesInGroup;
+            int firstBlock = ((numbers[i] - 1) % iNodesInGroup) / perBlock;
+            int lastBlock = firstBlock;
+
+            int j = i + 1;
+            while(j < missing)
+            {
+                int index = numbers[j] - 1;
+                int block = (index % iNodesInGroup) / perBlock;
+
+                if(index / iNodesInGroup != group || block > lastBlock + 1
+                   || block - firstBlock >= Ext2RoutineHandler.iNodeBatchBlocks)
+                    break;
+
+                lastBlock = block;
+                ++j;
+            }
+
+            INode[] nodes = readBlocks(group, firstBlock, lastBlock - firstBlock + 1, ext2, superblock, groupDescriptor);
+            int firstNumber = group * iNodesInGroup + firstBlock * perBlock + 1;
+
+            for(int k = i; k < j; ++k)
+                cache.put(numbers[k], nodes[numbers[k] - firstNumber].copy(iNodeSize));
+
+            i = j;
+        }
+    }
+}
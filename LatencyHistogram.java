@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class to represent the distribution of the latencies of an operation.
+ * Latencies fall into power-of-two buckets of nanoseconds, each counted
+ * by a LongAdder, so recording costs a numberOfLeadingZeros and an
+ * uncontended add whatever the number of threads recording at once.
+ * Percentiles are given as the upper bound of the bucket they fall in,
+ * which is at most twice the exact value.
+ * @author Vlad Diaconu
+ */
+public class LatencyHistogram
+{
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Method that allows the construction of an empty histogram.
+     * @param name is the name of the operation it measures.
+     */
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+
+        for(int k = 0; k < buckets.length; ++k)
+            buckets[k] = new LongAdder();
+    }
+
+    /**
+     * Method that records a latency.
+     * @param nanos is the latency in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        nanos = Math.max(0L, nanos);
+
+        //bucket k holds the latencies of 2^(k-1) to 2^k - 1 nanoseconds
+        buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * @return the name of the operation.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the number of latencies recorded.
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean latency in nanoseconds, 0 if none was recorded.
+     */
+    public long getMean()
+    {
+        long recorded = count.sum();
+
+        return recorded == 0 ? 0 : total.sum() / recorded;
+    }
+
+    /**
+     * @return the largest latency recorded, in nanoseconds.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Method that estimates a percentile of the latencies.
+     * @param fraction is the fraction of latencies at or below the
+     * percentile, from 0 to 1.
+     * @return the upper bound of the bucket holding the percentile, in
+     * nanoseconds, never more than the largest latency recorded.
+     */
+    public long getPercentile(double fraction)
+    {
+        long[] counts = new long[buckets.length];
+        long recorded = 0;
+
+        //the buckets are summed once, so the ranks below use a single snapshot
+        for(int k = 0; k < counts.length; ++k)
+        {
+            counts[k] = buckets[k].sum();
+            recorded += counts[k];
+        }
+
+        long rank = (long) Math.ceil(fraction * recorded);
+        long seen = 0;
+
+        for(int k = 0; k < counts.length; ++k)
+        {
+            seen += counts[k];
+
+            if(seen >= rank && seen > 0)
+                return Math.min(k == 0 ? 0 : (1L << k) - 1, getMax());
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Method that forgets every latency recorded.
+     */
+    public void reset()
+    {
+        for(LongAdder bucket : buckets)
+            bucket.reset();
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%-6s %8d %10.1f %10.1f %10.1f %10.1f", name, getCount(), getMean() / 1000.0,
+                             getPercentile(0.5) / 1000.0, getPercentile(0.99) / 1000.0, getMax() / 1000.0);
+    }
+}
@@ -1,7 +1,60 @@
+import java.io.*;
+
+/**
+ * Class that starts the program.
+ * Without arguments the image and the commands are asked for at the
+ * console. Otherwise the first argument is the image, and the commands
+ * come from the console, from a script (- reads it from the standard
+ * input), or from the arguments after -c, one command per argument:
+ * Main IMAGE [SCRIPT | - | -c COMMAND...]
+ * When the image or the script cannot be read, the error is printed on
+ * the standard error and the program exits with status 1.
+ * @author Vlad Diaconu
+ */
 public class Main
 {
     public static void main(String[] args)
     {
-        Ext2RoutineHandler.runRoutine();
+        if(args.length == 0)
+        {
+            Ext2RoutineHandler.runRoutine();
+            return;
+        }
+
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+
+        try
+        {
+            if(args.length == 1)
+            {
+                Ext2RoutineHandler.runRoutine(args[0], input, true);
+            }
+            else if(args[1].equals("-c"))
+            {
+                StringBuilder script = new StringBuilder();
+
+                for(int i = 2; i < args.length; ++i)
+                    script.append(args[i]).append('\n');
+
+                Ext2RoutineHandler.runRoutine(args[0], new BufferedReader(new StringReader(script.toString())), false);
+            }
+            else if(args[1].equals("-"))
+            {
+                Ext2RoutineHandler.runRoutine(args[0], input, false);
+            }
+            else
+            {
+                try(BufferedReader script = new BufferedReader(new FileReader(args[1])))
+                {
+                    Ext2RoutineHandler.runRoutine(args[0], script, false);
+                }
+            }
+        }
+        catch(IOException ioe)
+        {
+            //scripts must be able to tell a missing image or script from an empty output
+            System.err.println(ioe);
+            System.exit(1);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+import java.util.*;
+
+/**
+ * Class that resolves absolute and relative paths to inode numbers.
+ * Every (parent inode, name) pair that was looked up is kept in a bounded
+ * dentry cache, together with the pairs that were not found (negative
+ * entries), so resolving a path that was resolved recently costs one cache
+ * hit per component. The name indexes of recently searched directories are
+ * kept as well, so a miss in a hot directory does not reread it.
+ * The caches are only locked while they are searched or updated, so
+ * threads that miss are reading directories at the same time.
+ * @author Vlad Diaconu
+ */
+public class PathResolver
+{
+    private Ext2Reader ext2;
+    private SuperBlock superblock;
+    private GroupDescriptor groupDescriptor;
+
+    private LinkedHashMap<Dentry, Integer> dentries;
+    private LinkedHashMap<Integer, DirectoryIndex> indexes;
+
+    private long hits = 0L;
+    private long misses = 0L;
+
+    /**
+     * Class to represent the key of the dentry cache.
+     */
+    private static class Dentry
+    {
+        private final int parent;
+        private final String name;
+
+        Dentry(int parent, String name)
+        {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if(!(other instanceof Dentry))
+                return false;
+
+            Dentry dentry = (Dentry) other;
+            return parent == dentry.parent && name.equals(dentry.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * parent + name.hashCode();
+        }
+    }
+
+    /**
+     * Method that allows the construction of a resolver over a volume.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor of the volume.
+     */
+    public PathResolver(Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        this.ext2 = ext2;
+        this.superblock = superblock;
+        this.groupDescriptor = groupDescriptor;
+
+        this.dentries = new LinkedHashMap<Dentry, Integer>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Dentry, Integer> eldest)
+            {
+                return size() > Ext2RoutineHandler.dentryCacheSize;
+            }
+        };
+        this.indexes = new LinkedHashMap<Integer, DirectoryIndex>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DirectoryIndex> eldest)
+            {
+                return size() > Ext2RoutineHandler.directoryIndexCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Method that resolves a path.
+     * Paths starting with / are resolved from the root directory, all
+     * others from the working directory; . and .. are followed like any
+     * other entry of the directories.
+     * @param path is the path to resolve.
+     * @param workingDirectory is the inode number of the working directory.
+     * @return the inode number the path leads to, or 0 if it leads nowhere.
+     */
+    public int resolve(String path,int workingDirectory)
+    {
+        int current = path.startsWith("/") ? Ext2RoutineHandler.iNode_rootOffset : workingDirectory;
+
+        for(String name : path.split("/"))
+        {
+            if(name.isEmpty() || name.equals("."))
+                continue;
+
+            current = lookup(current, name);
+
+            if(current == 0)
+                return 0;
+        }
+
+        return current;
+    }
+
+    /**
+     * Method that finds an entry of a directory through the dentry cache.
+     * @param parent is the inode number of the directory.
+     * @param name is the name of the entry.
+     * @return the inode number of the entry, or 0 if there is no such entry
+     * or parent is not a directory.
+     */
+    private int lookup(int parent,String name)
+    {
+        Dentry key = new Dentry(parent, name);
+        DirectoryIndex index;
+
+        synchronized(this)
+        {
+            Integer child = dentries.get(key);
+
+            if(child != null)
+            {
+                ++hits;
+                return child;
+            }
+            ++misses;
+
+            index = indexes.get(parent);
+        }
+
+        int number = 0;
+        INode node = FileInfo.getINode(parent,ext2,superblock,groupDescriptor);
+
+        if(node.isDirectory())
+        {
+            if(index == null)
+            {
+                index = FileInfo.parseDirectory(parent, node, ext2);
+
+                synchronized(this)
+                {
+                    indexes.put(parent, index);
+                }
+            }
+
+            int entry = index.find(name);
+            if(entry >= 0)
+                number = index.getINodeNumber(entry);
+        }
+
+        //misses are cached too, so that looking for a missing file again is cheap
+        synchronized(this)
+        {
+            dentries.put(key, number);
+        }
+
+        return number;
+    }
+
+    /**
+     * @return the number of components resolved from the dentry cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of components that had to be looked up in their directory.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+}
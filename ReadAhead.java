@@ -0,0 +1,166 @@
+import java.util.concurrent.*;
+
+/**
+ * Class that reads the data of an inode ahead of the reader.
+ * While the reader keeps asking for the blocks that follow the previous
+ * ones, the next window of blocks is loaded in the background and the window
+ * doubles up to Ext2RoutineHandler.readAheadMax bytes. As soon as the reader
+ * jumps somewhere else the prefetched window is dropped and the window goes
+ * back to its initial size.
+ * @author Vlad Diaconu
+ */
+public class ReadAhead
+{
+    private static ExecutorService loaders = Executors.newCachedThreadPool(task ->
+    {
+        Thread thread = new Thread(task, "ext2-readahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Ext2Reader ext2;
+    private BlockMap map;
+
+    private int initialWindow;
+    private int maxWindow;
+    private int window;
+
+    private long nextBlock = 0L;
+    private long pendingBlock = -1L;
+    private Future<Chunk> pending;
+
+    /**
+     * Class to represent a number of consecutive logical blocks of the inode.
+     */
+    public static class Chunk
+    {
+        final byte[] data;
+        final long firstBlock;
+        final int blocks;
+
+        Chunk(byte[] data, long firstBlock, int blocks)
+        {
+            this.data = data;
+            this.firstBlock = firstBlock;
+            this.blocks = blocks;
+        }
+    }
+
+    /**
+     * Method that allows the construction of the readahead of an inode.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param map is the block map of the inode.
+     */
+    public ReadAhead(Ext2Reader ext2, BlockMap map)
+    {
+        this.ext2 = ext2;
+        this.map = map;
+
+        this.initialWindow = Math.max(1, Ext2RoutineHandler.streamBufferSize / ext2.getBlockSize());
+        this.maxWindow = (int) Math.max(initialWindow, Ext2RoutineHandler.readAheadMax / ext2.getBlockSize());
+        this.window = initialWindow;
+    }
+
+    /**
+     * Method that returns the blocks starting at a logical block, taking
+     * them from the background read if it already loaded them.
+     * @param logical is the first logical block needed by the reader.
+     * @return a chunk starting at the logical block.
+     */
+    public Chunk fetch(long logical)
+    {
+        boolean sequential = logical == nextBlock;
+        Chunk chunk = null;
+
+        if(pending != null && pendingBlock == logical)
+        {
+            try
+            {
+                chunk = pending.get();
+                window = Math.min(window * 2, maxWindow);
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                chunk = null;
+            }
+        }
+        else if(pending != null)
+        {
+            pending.cancel(false);
+        }
+        pending = null;
+
+        if(!sequential)
+            window = initialWindow;
+
+        if(chunk == null)
+            chunk = load(logical, window);
+
+        nextBlock = chunk.firstBlock + chunk.blocks;
+
+        //only a sequential pattern is worth reading ahead
+        if(sequential && Ext2RoutineHandler.readAheadMax > 0 && nextBlock < map.getBlockCount())
+        {
+            final long first = nextBlock;
+            final int blocks = window;
+
+            pendingBlock = first;
+            pending = loaders.submit(() -> load(first, blocks));
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Method that drops the background read, if there is one.
+     */
+    public void cancel()
+    {
+        if(pending != null)
+            pending.cancel(false);
+        pending = null;
+    }
+
+    /**
+     * Method that reads consecutive logical blocks with one read per run,
+     * filling holes with zeros.
+     * @param logical is the first logical block.
+     * @param blocks is the most blocks to read.
+     * @return the blocks that were read.
+     */
+    private Chunk load(long logical, int blocks)
+    {
+        int blockSize = ext2.getBlockSize();
+        blocks = (int) Math.max(1, Math.min(blocks, map.getBlockCount() - logical));
+
+        byte[] data = new byte[blocks * blockSize];
+        int done = 0;
+
+        while(done < blocks)
+        {
+            long current = logical + done;
+            int run = map.findRun(current);
+            int count;
+
+            if(run >= 0)
+            {
+                count = (int) Math.min(blocks - done, map.getLogicalStart(run) + map.getLength(run) - current);
+
+                long physical = map.getPhysicalStart(run) + current - map.getLogicalStart(run);
+                ext2.readInto(physical * blockSize, data, done * blockSize, count * blockSize);
+            }
+            else
+            {
+                int next = -run - 1;
+                long holeEnd = next < map.getRunCount() ? map.getLogicalStart(next) : map.getBlockCount();
+
+                //the array is already zeroed
+                count = (int) Math.max(1, Math.min(blocks - done, holeEnd - current));
+            }
+
+            done += count;
+        }
+
+        return new Chunk(data, logical, blocks);
+    }
+}
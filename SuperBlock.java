@@ -18,6 +18,7 @@ import java.util.*;
     private int groupNumber = 0;
     private int iNodeSize;
     private int fileSystemBlockSize;
+    private int firstDataBlock;
     private String magicNumberCopy;
 
     /**
@@ -51,6 +52,16 @@ import java.util.*;
      * @param groupNumber = total number of groups in a file.
      */
     public void extractDetails()
+    {
+        extractDetails(true);
+    }
+
+    /**
+     * Method that extracts the details of the file from the superblock,
+     * printing them only if asked to, so that scripts run without them.
+     * @param print is true if the details are printed on the command line.
+     */
+    public void extractDetails(boolean print)
     {
         byte[] file = new byte[Ext2RoutineHandler.fileSystemNameSize];
         
@@ -58,35 +69,38 @@ import java.util.*;
             file[i] = buffer.get(Ext2RoutineHandler.fileSystemOffset + i);
 
         volumeName = new String(file);
-        System.out.println("~~~~~FILE |"+ volumeName + "| DETAILS~~~~~");
 
         magicNumber = buffer.getShort(Ext2RoutineHandler.magicNumberOffset);
         magicNumberCopy = Integer.toHexString(magicNumber - 0xffff0000);
-        System.out.println("Magic number: 0x" + magicNumberCopy);
 
         iNodeNumber = buffer.getInt(Ext2RoutineHandler.iNodeCounter);
-        System.out.println("Number of iNodes in file: " + iNodeNumber);
-
         blockNumber = buffer.getInt(Ext2RoutineHandler.blockCounter);
-        System.out.println("Number of blocks: " + blockNumber);
-
         blocksInGroup = buffer.getInt(Ext2RoutineHandler.blocksInGroup);
-        System.out.println("Number of blocks in a group: " + blocksInGroup);
-
         iNodesInGroup = buffer.getInt(Ext2RoutineHandler.iNodesInGroup);
-        System.out.println("Number of iNodes in a group: " + iNodesInGroup);
-        
         iNodeSize = buffer.getInt(Ext2RoutineHandler.iNodeSize);
-        System.out.println("Size of a iNode in file: " + iNodeSize);
+        fileSystemBlockSize = Ext2RoutineHandler.minimumBlockSize << buffer.getInt(Ext2RoutineHandler.fileSystemBlockSizeOffset);
 
-        fileSystemBlockSize = 1024 * (int)Math.pow(2,buffer.getInt(Ext2RoutineHandler.fileSystemBlockSizeOffset));
-        System.out.println("Block size of filesystem: " + fileSystemBlockSize);
+        //the superblock sits in block 1 of 1 KiB volumes, in block 0 of all others
+        firstDataBlock = buffer.getInt(Ext2RoutineHandler.firstDataBlockOffset);
 
-        groupNumber =(int)(blockNumber / blocksInGroup);
-        if((blockNumber % blocksInGroup) != 0)
+        //the blocks before the first data block belong to no group
+        long groupedBlocks = (blockNumber & 0xffffffffL) - firstDataBlock;
+        groupNumber =(int)(groupedBlocks / blocksInGroup);
+        if((groupedBlocks % blocksInGroup) != 0)
             groupNumber += 1;
-        System.out.println("Number of block groups is: " + groupNumber);
 
+        if(!print)
+            return;
+
+        System.out.println("~~~~~FILE |"+ volumeName + "| DETAILS~~~~~");
+        System.out.println("Magic number: 0x" + magicNumberCopy);
+        System.out.println("Number of iNodes in file: " + iNodeNumber);
+        System.out.println("Number of blocks: " + blockNumber);
+        System.out.println("Number of blocks in a group: " + blocksInGroup);
+        System.out.println("Number of iNodes in a group: " + iNodesInGroup);
+        System.out.println("Size of a iNode in file: " + iNodeSize);
+        System.out.println("Block size of filesystem: " + fileSystemBlockSize);
+        System.out.println("Number of block groups is: " + groupNumber);
         System.out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
     }
 
@@ -158,4 +172,22 @@ import java.util.*;
      */
     public int getiNodeSize()
     { return iNodeSize;}
+
+    /**
+     * Accessor that retrieves the size of a block
+     * of the filesystem.
+     * @return an int representing the size of a
+     * block in bytes.
+     */
+    public int getBlockSize()
+    { return fileSystemBlockSize;}
+
+    /**
+     * Accessor that retrieves the number of the block
+     * holding the superblock.
+     * @return an int representing the first data block,
+     * the group descriptor table starts at the next one.
+     */
+    public int getFirstDataBlock()
+    { return firstDataBlock;}
  }
\ No newline at end of file
@@ -0,0 +1,173 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class that visits every entry of a directory tree of the volume.
+ * Directories are walked in parallel by work-stealing ForkJoin tasks.
+ * Every entry is given to the visitor, but a bitset of visited inode
+ * numbers keeps the size of a hard linked inode from being counted twice
+ * and corrupt directory loops from being followed forever.
+ * @author Vlad Diaconu
+ */
+public class TreeWalker
+{
+    private static ForkJoinPool walkers = new ForkJoinPool(Math.max(1, Ext2RoutineHandler.walkParallelism));
+
+    private Ext2Reader ext2;
+    private SuperBlock superblock;
+    private GroupDescriptor groupDescriptor;
+    private AtomicLongArray visited;
+
+    /**
+     * Interface of the callbacks of a walk. The callbacks are called from
+     * several threads at once.
+     */
+    public interface Visitor
+    {
+        /**
+         * Method called for every entry of every directory walked, so
+         * every name of a hard linked inode is given.
+         * @param path is the path of the entry.
+         * @param name is the name of the entry.
+         * @param iNodeNumber is the number of the inode of the entry.
+         * @param node is the decoded inode of the entry.
+         */
+        void entry(String path, String name, int iNodeNumber, INode node);
+
+        /**
+         * Method called once all the entries below a directory were visited.
+         * @param path is the path of the directory.
+         * @param total is the size of the directory and of every inode
+         * below it that was visited for the first time.
+         */
+        default void directory(String path, long total)
+        {}
+    }
+
+    /**
+     * Method that allows the construction of a walker over a volume.
+     * @param ext2 is the ext2 image the program reads from.
+     * @param superblock is the superblock of the system.
+     * @param groupDescriptor is the group descriptor of the volume.
+     */
+    public TreeWalker(Ext2Reader ext2,SuperBlock superblock,GroupDescriptor groupDescriptor)
+    {
+        this.ext2 = ext2;
+        this.superblock = superblock;
+        this.groupDescriptor = groupDescriptor;
+        this.visited = new AtomicLongArray(superblock.getiNodeNumber() / 64 + 1);
+    }
+
+    /**
+     * Method that walks the tree below a directory.
+     * @param iNodeNumber is the number of the inode of the directory.
+     * @param node is the decoded inode of the directory.
+     * @param path is the path of the directory, used as prefix of the
+     * paths given to the visitor.
+     * @param visitor receives the entries of the tree.
+     * @return the size of the directory and of every inode below it.
+     */
+    public long walk(int iNodeNumber,INode node,String path,Visitor visitor)
+    {
+        markVisited(iNodeNumber);
+
+        return walkers.invoke(new DirectoryTask(path, iNodeNumber, node, visitor));
+    }
+
+    /**
+     * Method that marks an inode as visited.
+     * @param iNodeNumber is the number of the inode.
+     * @return true if the inode was not visited before.
+     */
+    private boolean markVisited(int iNodeNumber)
+    {
+        if(iNodeNumber < 1 || iNodeNumber > superblock.getiNodeNumber())
+            return false;
+
+        int word = iNodeNumber >>> 6;
+        long bit = 1L << (iNodeNumber & 63);
+
+        while(true)
+        {
+            long old = visited.get(word);
+
+            if((old & bit) != 0)
+                return false;
+            if(visited.compareAndSet(word, old, old | bit))
+                return true;
+        }
+    }
+
+    /**
+     * Class to represent the walk of a single directory. Every
+     * subdirectory is walked by a task of its own.
+     */
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveTask<Long>
+    {
+        private String path;
+        private int iNodeNumber;
+        private INode node;
+        private Visitor visitor;
+
+        DirectoryTask(String path,int iNodeNumber,INode node,Visitor visitor)
+        {
+            this.path = path;
+            this.iNodeNumber = iNodeNumber;
+            this.node = node;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            DirectoryIndex entries = FileInfo.parseDirectory(iNodeNumber, node, ext2);
+
+            long total = node.getSize();
+            ArrayList<DirectoryTask> subdirectories = new ArrayList<>();
+            int[] iNodeNumbers = new int[Math.min(entries.size(), Ext2RoutineHandler.iNodeBatchEntries)];
+
+            //every batch is visited before the next one is prefetched, so a large
+            //directory does not evict its own inodes from the cache
+            for(int first = 0; first < entries.size(); first += iNodeNumbers.length)
+            {
+                int count = Math.min(iNodeNumbers.length, entries.size() - first);
+
+                for(int i = 0; i < count; ++i)
+                    iNodeNumbers[i] = entries.getINodeNumber(first + i);
+                INodeTable.prefetch(iNodeNumbers,count,ext2,superblock,groupDescriptor);
+
+                for(int i = 0; i < count; ++i)
+                {
+                    if(entries.isSelfOrParent(first + i))
+                        continue;
+
+                    String name = entries.getName(first + i);
+                    INode child = FileInfo.getINode(iNodeNumbers[i],ext2,superblock,groupDescriptor);
+                    String childPath = path + name;
+
+                    visitor.entry(childPath, name, iNodeNumbers[i], child);
+
+                    //the other names of an inode already reached add nothing to the total
+                    if(!markVisited(iNodeNumbers[i]))
+                        continue;
+
+                    if(child.isDirectory())
+                        subdirectories.add(new DirectoryTask(childPath + "/", iNodeNumbers[i], child, visitor));
+                    else
+                        total += child.getSize();
+                }
+            }
+
+            invokeAll(subdirectories);
+
+            for(DirectoryTask task : subdirectories)
+                total += task.join();
+
+            visitor.directory(path, total);
+
+            return total;
+        }
+    }
+}
@@ -1,32 +1,95 @@
 import java.util.*;
 import java .io.*;
 import java .nio.*;
+import java.nio.channels.*;
 
 /**
  * Class to represent the reading of files byte-wise.
+ * The volume can either be read through a random access file
+ * or be memory-mapped in fixed-size windows.
  * @author Vlad Diaconu
  */
 
 public class Volume
 {
     private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer[] windows;
+    private long length;
 
     /**
      * Construct the volume of a FileSystem
-     * @param file is the name of the file that 
+     * @param file is the name of the file that
      * the program is looking for.
+     * @throws IOException if the file cannot be opened.
      */
-    public Volume(String file)
+    public Volume(String file) throws IOException
     {
-        System.out.println("Attempting to read "+ file +" file...");
+        this(file, false);
+    }
+
+    /**
+     * Construct the volume of a FileSystem and optionally map it in memory.
+     * @param file is the name of the file that
+     * the program is looking for.
+     * @param mapped is true if the image should be read through
+     * memory-mapped windows instead of seek and read calls.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public Volume(String file, boolean mapped) throws IOException
+    {
+        this(file, mapped, true);
+    }
+
+    /**
+     * Construct the volume of a FileSystem, optionally mapped in memory
+     * and optionally without announcing the read.
+     * @param file is the name of the file that
+     * the program is looking for.
+     * @param mapped is true if the image should be read through
+     * memory-mapped windows instead of seek and read calls.
+     * @param verbose is true if the read is announced on the command line.
+     * @throws IOException if the file cannot be opened or mapped; the
+     * caller decides how the failure is reported.
+     */
+    public Volume(String file, boolean mapped, boolean verbose) throws IOException
+    {
+        if(verbose)
+            System.out.println("Attempting to read "+ file +" file...");
+
+        this.file = new RandomAccessFile(file, "r");
         try
         {
-            this.file = new RandomAccessFile(file, "r");
+            this.channel = this.file.getChannel();
+            this.length = channel.size();
+
+            if(mapped)
+                mapWindows();
         }
         catch(IOException ioe)
         {
-            System.out.println("Something went wrong while attempting to read "+ file+ " \n" + ioe);
-            System.exit(0);
+            this.file.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Method that maps the whole image in windows of windowSize bytes.
+     * Every window also maps windowOverlap bytes of the next one, so that
+     * any block-sized read falls entirely inside a single window.
+     * A single mapping cannot exceed 2 GB, hence the chunking.
+     */
+    private void mapWindows() throws IOException
+    {
+        int count = (int)((length + Ext2RoutineHandler.windowSize - 1) / Ext2RoutineHandler.windowSize);
+        windows = new MappedByteBuffer[count];
+
+        for(int i = 0; i < count; ++i)
+        {
+            long start = i * Ext2RoutineHandler.windowSize;
+            long size = Math.min(length - start, Ext2RoutineHandler.windowSize + Ext2RoutineHandler.windowOverlap);
+
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
         }
     }
 
@@ -40,4 +103,82 @@ public class Volume
         return file;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return the channel of the filesystem-image.
+     */
+    public FileChannel getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * @return true if the image is read through memory-mapped windows.
+     */
+    public boolean isMapped()
+    {
+        return windows != null;
+    }
+
+    /**
+     * @return the size of the filesystem-image in bytes.
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    /**
+     * Method that reads bytes of the image at a given offset, before the
+     * layout of the filesystem (and so its block size) is known.
+     * @param start is the byte offset within the image.
+     * @param size is the number of bytes to read.
+     * @return readData, and array of bytes
+     */
+    public byte[] read(long start, int size)
+    {
+        ByteBuffer readData = ByteBuffer.allocate(size);
+
+        try
+        {
+            while(readData.hasRemaining())
+            {
+                if(channel.read(readData, start + readData.position()) < 0)
+                    throw new EOFException("Read past the end of the image at " + (start + readData.position()));
+            }
+        }
+        catch(IOException ioe)
+        {
+            System.out.println(ioe);
+        }
+
+        return readData.array();
+    }
+
+    /**
+     * Method that returns a view of the mapped image without copying it.
+     * @param start is the byte offset within the image.
+     * @param size is the number of bytes of the view.
+     * @return a little endian slice of the mapped window containing the
+     * whole range, or null if the range is not fully inside one window.
+     */
+    public ByteBuffer slice(long start, int size)
+    {
+        int index = (int)(start / Ext2RoutineHandler.windowSize);
+
+        if(windows == null || index >= windows.length)
+            return null;
+
+        ByteBuffer window = windows[index];
+        int offset = (int)(start - index * Ext2RoutineHandler.windowSize);
+
+        if(offset + size > window.capacity())
+            return null;
+
+        ByteBuffer view = window.duplicate();
+        view.position(offset);
+        view.limit(offset + size);
+
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
@@ -0,0 +1,105 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Class that gives the benchmarks access to the reader.
+ * It lives in the default package, next to the reader, and is loaded
+ * by name through ext2.bench.Ext2Operations.
+ * @author Vlad Diaconu
+ */
+public class BenchmarkOperations implements ext2.bench.Ext2Operations
+{
+    private Ext2Volume volume;
+    private Ext2Reader ext2;
+
+    public void writeImage(String image, String... options) throws IOException
+    {
+        Ext2ImageWriter.parse(options, 0).write(image);
+    }
+
+    public void mount(String image, boolean mapped) throws IOException
+    {
+        volume = Ext2Volume.mount(image, mapped);
+        ext2 = volume.getReader();
+    }
+
+    public int blockSize()
+    {
+        return ext2.getBlockSize();
+    }
+
+    public long blockCount()
+    {
+        return volume.getSuperBlock().getBlockNumber() & 0xffffffffL;
+    }
+
+    public byte[] read(long start, int size)
+    {
+        return ext2.read(start, size);
+    }
+
+    public ByteBuffer readBlock(long block)
+    {
+        return ext2.readBlock(block);
+    }
+
+    public int resolve(String path)
+    {
+        return volume.resolve(path);
+    }
+
+    public long decodeINodes(int group, int blocks)
+    {
+        int iNodeSize = volume.getSuperBlock().getiNodeSize();
+        long table = volume.getGroupDescriptor().getINodeTable(group);
+        long checksum = 0;
+
+        for(int b = 0; b < blocks; ++b)
+        {
+            ByteBuffer data = ext2.readBlock(table + b);
+
+            for(int offset = 0; offset + iNodeSize <= data.capacity(); offset += iNodeSize)
+            {
+                INode node = new INode(data, offset);
+                checksum += node.getSize() + node.getFileType() + node.getHardLinks();
+            }
+        }
+
+        return checksum;
+    }
+
+    public int list(int iNodeNumber, PrintStream out)
+    {
+        FileInfo directory = volume.list(iNodeNumber);
+
+        directory.printListing(out);
+
+        return directory.getIndex().size();
+    }
+
+    public long readFile(int iNodeNumber, byte[] buffer) throws IOException
+    {
+        long total = 0;
+
+        try(InputStream in = volume.open(iNodeNumber))
+        {
+            int read;
+
+            while((read = in.read(buffer, 0, buffer.length)) != -1)
+                total += read;
+        }
+
+        return total;
+    }
+
+    public void dumpHex(byte[] bytes) throws IOException
+    {
+        Ext2RoutineHandler.dumpHexBytes(bytes);
+    }
+
+    public long dumpRange(long start, long length) throws IOException
+    {
+        return new HexDumper(Channels.newChannel(System.out)).dump(ext2, start, length);
+    }
+}
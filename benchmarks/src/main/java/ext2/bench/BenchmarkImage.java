@@ -0,0 +1,82 @@
+package ext2.bench;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Class that provides the image the benchmarks read.
+ * The image is kept in tmpfs (/dev/shm unless -Dext2.bench.dir says
+ * otherwise), so the benchmarks measure the reader rather than the disk,
+ * and is written by Ext2ImageWriter the first time it is needed, so no
+ * external tool is required. Next to the files and the directory named
+ * below it holds a generated tree, whose shape -Dext2.bench.tree sets
+ * as fanout:depth:files, and -Dext2.bench.fragmentation scatters the
+ * blocks of every file. -Dext2.bench.image points the benchmarks at an
+ * existing image instead; it must hold the files and the directory
+ * named below.
+ * @author Vlad Diaconu
+ */
+public final class BenchmarkImage
+{
+    /** files read through no, one, two and three levels of indirection with 1 KiB blocks */
+    public static final String DIRECT = "direct.bin";
+    public static final String SINGLE = "single.bin";
+    public static final String DOUBLE = "double.bin";
+    public static final String TRIPLE = "triple.bin";
+
+    /** directory listed by the listing benchmark */
+    public static final String LISTING = "listing";
+    public static final int LISTING_ENTRIES = 2000;
+
+    private static final String DIRECTORY = System.getProperty("ext2.bench.dir", "/dev/shm");
+    private static final String TREE = System.getProperty("ext2.bench.tree", "4:3:16");
+    private static final String FRAGMENTATION = System.getProperty("ext2.bench.fragmentation", "0");
+
+    private BenchmarkImage()
+    {}
+
+    /**
+     * Method that finds the image, building it if it does not exist yet.
+     * @return the path of the image.
+     */
+    public static synchronized String path() throws IOException
+    {
+        String image = System.getProperty("ext2.bench.image");
+
+        if(image != null)
+            return image;
+
+        //the name tells images of different shapes apart
+        Path path = Paths.get(DIRECTORY, "ext2-bench-1k-" + TREE.replace(':', '-') + "-" + FRAGMENTATION + ".img");
+
+        if(!Files.exists(path))
+            build(path);
+
+        return path.toString();
+    }
+
+    /**
+     * Method that writes the image, first under a temporary name so that
+     * an interrupted run never leaves a partial image behind.
+     * @param image is the path of the image.
+     */
+    private static void build(Path image) throws IOException
+    {
+        String[] tree = TREE.split(":");
+        Path partial = Paths.get(image + ".tmp");
+
+        Ext2Operations.load().writeImage(partial.toString(),
+                                         "-block", "1024",
+                                         "-fanout", tree[0], "-depth", tree[1], "-files", tree[2],
+                                         "-size", "0:65536",
+                                         "-fragmentation", FRAGMENTATION,
+                                         "-seed", "42",
+                                         "-file", DIRECT + ":" + (8 << 10),
+                                         "-file", SINGLE + ":" + (200 << 10),
+                                         "-file", DOUBLE + ":" + (8 << 20),
+                                         "-file", TRIPLE + ":" + (72 << 20),
+                                         "-dir", LISTING + ":" + LISTING_ENTRIES + ":" + 2048);
+
+        Files.move(partial, image, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,102 @@
+package ext2.bench;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * Interface of the operations of the reader that the benchmarks measure.
+ * The reader lives in the default package, which code in a named package
+ * (as JMH requires benchmarks to be) cannot refer to; the implementation
+ * of this interface lives in the default package instead and is loaded
+ * by name, so every call is a plain interface call the JIT can inline.
+ * @author Vlad Diaconu
+ */
+public interface Ext2Operations
+{
+    /**
+     * Method that writes a synthetic image.
+     * @param image is the path of the image.
+     * @param options holds the options of the image writer.
+     */
+    void writeImage(String image, String... options) throws IOException;
+
+    /**
+     * Method that mounts an image.
+     * @param image is the path of the image.
+     * @param mapped is true if the image is memory-mapped.
+     */
+    void mount(String image, boolean mapped) throws IOException;
+
+    /**
+     * @return the size of a block of the mounted image.
+     */
+    int blockSize();
+
+    /**
+     * @return the number of blocks of the mounted image.
+     */
+    long blockCount();
+
+    /**
+     * Method that reads bytes of the volume without the block cache.
+     */
+    byte[] read(long start, int size);
+
+    /**
+     * Method that reads a block of the volume through the block cache.
+     */
+    ByteBuffer readBlock(long block);
+
+    /**
+     * Method that resolves a path from the root directory.
+     * @return the inode number, or 0 if the path leads nowhere.
+     */
+    int resolve(String path);
+
+    /**
+     * Method that decodes every inode of the first blocks of an inode table,
+     * bypassing the inode cache.
+     * @return a checksum of the decoded fields.
+     */
+    long decodeINodes(int group, int blocks);
+
+    /**
+     * Method that loads a directory and prints its listing, as ls does.
+     * @return the number of entries of the directory.
+     */
+    int list(int iNodeNumber, PrintStream out);
+
+    /**
+     * Method that streams the whole content of a file.
+     * @return the number of bytes read.
+     */
+    long readFile(int iNodeNumber, byte[] buffer) throws IOException;
+
+    /**
+     * Method that dumps bytes as hex and ascii on the standard output.
+     */
+    void dumpHex(byte[] bytes) throws IOException;
+
+    /**
+     * Method that dumps a range of the volume as hex and ascii on the
+     * standard output, as the dump command does.
+     * @return the number of bytes dumped.
+     */
+    long dumpRange(long start, long length) throws IOException;
+
+    /**
+     * Method that loads the implementation from the default package.
+     * @return the operations.
+     */
+    static Ext2Operations load()
+    {
+        try
+        {
+            return (Ext2Operations) Class.forName("BenchmarkOperations").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException roe)
+        {
+            throw new IllegalStateException("The reader is not on the class path", roe);
+        }
+    }
+}
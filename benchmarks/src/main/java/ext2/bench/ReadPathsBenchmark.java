@@ -0,0 +1,151 @@
+package ext2.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of the read paths of the reader: raw and cached volume reads,
+ * inode decoding, directory listing, file streaming through every level of
+ * indirection, and the hex dump.
+ * Run with java -jar target/benchmarks.jar, optionally followed by the
+ * names of the benchmarks to run.
+ * @author Vlad Diaconu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadPathsBenchmark
+{
+    /**
+     * Class to represent the mounted image shared by the benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Mounted
+    {
+        @Param({"false", "true"})
+        public boolean mapped;
+
+        public Ext2Operations ext2;
+        public long[] offsets;
+        public int next;
+
+        @Setup(Level.Trial)
+        public void mount() throws IOException
+        {
+            ext2 = Ext2Operations.load();
+            ext2.mount(BenchmarkImage.path(), mapped);
+
+            //block-aligned offsets spread over the whole volume, so reads miss the BlockCache;
+            //the image stays in the page cache of the OS, so these are not disk reads
+            Random random = new Random(7);
+            offsets = new long[4096];
+            for(int i = 0; i < offsets.length; ++i)
+                offsets[i] = (1 + (long)(random.nextDouble() * (ext2.blockCount() - 1))) * ext2.blockSize();
+        }
+
+        public long nextOffset()
+        {
+            next = (next + 1) & (offsets.length - 1);
+            return offsets[next];
+        }
+    }
+
+    /**
+     * Class to represent the file streamed by the file benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class File
+    {
+        @Param({BenchmarkImage.DIRECT, BenchmarkImage.SINGLE, BenchmarkImage.DOUBLE, BenchmarkImage.TRIPLE})
+        public String name;
+
+        public int iNodeNumber;
+        public byte[] buffer = new byte[64 * 1024];
+
+        @Setup(Level.Trial)
+        public void resolve(Mounted mounted)
+        {
+            iNodeNumber = mounted.ext2.resolve("/" + name);
+
+            if(iNodeNumber == 0)
+                throw new IllegalStateException(name + " is not in the benchmark image");
+        }
+    }
+
+    /**
+     * Class to represent the output of the benchmarks that print, which is thrown away.
+     */
+    @State(Scope.Benchmark)
+    public static class Output
+    {
+        public PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        public PrintStream standardOutput;
+        public int listing;
+        public byte[] dump = new byte[4096];
+
+        @Setup(Level.Trial)
+        public void redirect(Mounted mounted)
+        {
+            listing = mounted.ext2.resolve("/" + BenchmarkImage.LISTING);
+            new Random(3).nextBytes(dump);
+
+            standardOutput = System.out;
+            System.setOut(discard);
+        }
+
+        @TearDown(Level.Trial)
+        public void restore()
+        {
+            System.setOut(standardOutput);
+        }
+    }
+
+    @Benchmark
+    public byte[] volumeRead(Mounted mounted)
+    {
+        return mounted.ext2.read(mounted.nextOffset(), mounted.ext2.blockSize());
+    }
+
+    @Benchmark
+    public Object cachedBlockRead(Mounted mounted)
+    {
+        return mounted.ext2.readBlock(mounted.nextOffset() / mounted.ext2.blockSize() & 63);
+    }
+
+    @Benchmark
+    public long decodeINodeTable(Mounted mounted)
+    {
+        return mounted.ext2.decodeINodes(0, 16);
+    }
+
+    @Benchmark
+    public int listDirectory(Mounted mounted, Output output)
+    {
+        return mounted.ext2.list(output.listing, output.discard);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long readFile(Mounted mounted, File file) throws IOException
+    {
+        return mounted.ext2.readFile(file.iNodeNumber, file.buffer);
+    }
+
+    @Benchmark
+    public void dumpHexBytes(Mounted mounted, Output output) throws IOException
+    {
+        mounted.ext2.dumpHex(output.dump);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long dumpVolumeRange(Mounted mounted, Output output) throws IOException
+    {
+        return mounted.ext2.dumpRange(1L << 20, 1L << 20);
+    }
+}